@@ -2,6 +2,7 @@ package org.splitbrain.thecashster;
 
 import android.annotation.SuppressLint;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Paint;
 import android.location.Location;
 import android.net.Uri;
@@ -9,15 +10,15 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.format.DateUtils;
 import android.view.View;
 import android.webkit.WebView;
 import android.widget.TextView;
 
+import org.splitbrain.thecashster.Tasks.AsyncHandlerTask;
 import org.splitbrain.thecashster.Tasks.SheetsTask;
-import org.splitbrain.thecashster.model.Place;
-import org.splitbrain.thecashster.model.Transaction;
-
-import io.realm.Realm;
+import org.splitbrain.thecashster.Tasks.StatsTask;
+import org.splitbrain.thecashster.model.Money;
 
 /**
  * Display a README and some debug output
@@ -47,26 +48,57 @@ public class AboutActivity extends AppCompatActivity {
                 + " " + BuildConfig.VERSION_CODE
         );
 
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+
         tv = findViewById(R.id.textAboutDocId);
         tv.setPaintFlags(tv.getPaintFlags() | Paint.UNDERLINE_TEXT_FLAG);
-        tv.setText(PreferenceManager.getDefaultSharedPreferences(this)
-                .getString(SheetsTask.PREF_SHEET_ID, "<none>"));
+        tv.setText(prefs.getString(SheetsTask.PREF_SHEET_ID, "<none>"));
 
-        Realm realm = Realm.getDefaultInstance();
+        long lastSync = prefs.getLong(SheetsTask.PREF_SYNC_SUCCESS, 0);
+        int retries = prefs.getInt(SheetsTask.PREF_SYNC_RETRIES, 0);
+        String synced = lastSync == 0 ? getString(R.string.about_sync_never)
+                : DateUtils.formatDateTime(this, lastSync,
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+        tv = findViewById(R.id.textAboutSync);
+        tv.setText(retries == 0 ? synced : getString(R.string.about_sync_retries, synced, retries));
 
-        tv = findViewById(R.id.textAboutNumberPlaces);
-        tv.setText(String.valueOf(realm.where(Place.class).count()));
+        loadStats();
 
-        tv = findViewById(R.id.textAboutPendingTx);
-        tv.setText(String.valueOf(realm.where(Transaction.class).count()));
-
-        realm.close();
+        tv = findViewById(R.id.textAboutMetrics);
+        tv.setText(Metrics.dump());
 
         Location ll = getIntent().getParcelableExtra("location");
         tv = findViewById(R.id.textAboutLocation);
         tv.setText(ll.getLatitude() + "," + ll.getLongitude() + " (±" + ll.getAccuracy() + "m)");
     }
 
+    /**
+     * Count the stored data in the background and show it when done
+     */
+    private void loadStats() {
+        StatsTask task = new StatsTask();
+        task.setOnTaskCompleted(new AsyncHandlerTask.OnTaskCompleted() {
+            @Override
+            public void onTaskCompleted(AsyncHandlerTask task) {
+                if (isFinishing()) return;
+                StatsTask stats = (StatsTask) task;
+
+                TextView tv = findViewById(R.id.textAboutNumberPlaces);
+                tv.setText(String.valueOf(stats.getPlaces()));
+
+                tv = findViewById(R.id.textAboutPendingTx);
+                tv.setText(String.valueOf(stats.getPendingTransactions()));
+
+                tv = findViewById(R.id.textAboutSpending);
+                tv.setText(getString(R.string.about_spending_summary,
+                        Money.format(stats.getToday()),
+                        Money.format(stats.getWeek()),
+                        Money.format(stats.getMonth())));
+            }
+        });
+        task.execute();
+    }
+
     public void onDocIDClick(View v) {
         TextView tv = (TextView) v;
         String docid = tv.getText().toString();
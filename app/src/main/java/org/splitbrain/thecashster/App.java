@@ -1,8 +1,12 @@
 package org.splitbrain.thecashster;
 
 import android.app.Application;
+import android.os.StrictMode;
+
+import org.splitbrain.thecashster.model.Migration;
 
 import io.realm.Realm;
+import io.realm.RealmConfiguration;
 
 /**
  * The application
@@ -15,7 +19,21 @@ public class App extends Application {
     public void onCreate() {
         super.onCreate();
 
+        // make accidental disk access on the main thread visible during development
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
+
         // Initialize Realm (just once per application)
         Realm.init(getApplicationContext());
+        RealmConfiguration config = new RealmConfiguration.Builder()
+                .schemaVersion(Migration.SCHEMA_VERSION)
+                .migration(new Migration())
+                .build();
+        Realm.setDefaultConfiguration(config);
     }
 }
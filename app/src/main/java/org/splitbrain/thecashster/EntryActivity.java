@@ -10,7 +10,6 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.location.Location;
@@ -20,13 +19,15 @@ import android.support.annotation.NonNull;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.AdapterView;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -34,16 +35,16 @@ import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
-import com.google.api.client.util.ExponentialBackOff;
-import com.google.api.services.sheets.v4.SheetsScopes;
 
-import org.splitbrain.thecashster.Tasks.SheetsTask;
+import org.splitbrain.thecashster.Tasks.SheetsClient;
+import org.splitbrain.thecashster.Tasks.SyncScheduler;
+import org.splitbrain.thecashster.model.Ledger;
+import org.splitbrain.thecashster.model.Money;
 import org.splitbrain.thecashster.model.Place;
+import org.splitbrain.thecashster.model.PlaceIndex;
+import org.splitbrain.thecashster.model.PlaceRow;
 import org.splitbrain.thecashster.model.Transaction;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Locale;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -56,10 +57,8 @@ public class EntryActivity extends AppCompatActivity implements
 
     private final String TAG = this.getClass().getSimpleName();
 
-    // preference key to store which account to use for the spreadsheet API
+    // preference key that stored which account to use in earlier versions
     private static final String PREF_ACCOUNT_NAME = "accountName";
-    // requested permissions for the spreadsheet API
-    private final String[] SCOPES = {SheetsScopes.SPREADSHEETS};
 
     // identifiers for request callbacks
     public static final int REQUEST_ACCOUNT_PICKER = 1000;
@@ -68,10 +67,19 @@ public class EntryActivity extends AppCompatActivity implements
     public static final int REQUEST_PERMISSION_GET_ACCOUNTS = 1003;
     public static final int REQUEST_FINE_LOCATION = 1004;
 
+    // how long to wait for more input before searching Foursquare while typing
+    private static final long SEARCH_DELAY = 600;
+    // no more digits are accepted once the amount reaches this
+    private static final long MAX_CENTS = 10000000;
+
     // business logic
     private PlacesAdapter mAdapter;
-    private String mAmount = "";
+    // the entered digits as cents, the sign is kept separately
+    private long mCents = 0;
     private int mNeg = -1;
+    // reused for formatting the amount
+    private final char[] mAmountChars = new char[Money.MAX_LENGTH + 1];
+    private Vibrator mVibrator;
     private Location mLastLocation;
     private int mAccuracy = 1;
 
@@ -88,8 +96,10 @@ public class EntryActivity extends AppCompatActivity implements
     View vLayoutNumberPad;
     @BindView(R.id.activityEntry)
     View vActivityEntry;
+    @BindView(R.id.textAmount)
+    TextView vTextAmount;
     @BindView(R.id.listPlaces)
-    ListView mListView;
+    RecyclerView mListView;
 
     /**
      * Initialize the activity
@@ -101,13 +111,13 @@ public class EntryActivity extends AppCompatActivity implements
         ButterKnife.bind(this);
 
         mAccuracy = 1;
+        mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
         // attach adapter to our list view
-        mAdapter = new PlacesAdapter(this, new ArrayList<Place>());
+        mAdapter = new PlacesAdapter(this);
+        mAdapter.setOnPlaceClickListener(new PlaceListHandler());
+        mListView.setLayoutManager(new LinearLayoutManager(this));
         mListView.setAdapter(mAdapter);
-        ListViewHandler lvh = new ListViewHandler();
-        mListView.setOnItemClickListener(lvh);
-        mListView.setOnItemLongClickListener(lvh);
 
         // pull to refresh
         final SwipeRefreshLayout swipeRefresh = findViewById(R.id.swipeRefresh);
@@ -127,6 +137,7 @@ public class EntryActivity extends AppCompatActivity implements
         vTextSearch.setOnFocusChangeListener(sth);
         vTextSearch.setOnEditorActionListener(sth);
         vTextSearch.setClearTextListener(sth);
+        vTextSearch.addTextChangedListener(sth);
 
         // initialize display
         updateAmountView();
@@ -140,10 +151,8 @@ public class EntryActivity extends AppCompatActivity implements
                     .build();
         }
 
-        // Initialize Google Credential object
-        mCredential = GoogleAccountCredential.usingOAuth2(
-                this, Arrays.asList(SCOPES)
-        ).setBackOff(new ExponentialBackOff());
+        // The Google Credential object is shared with the sync
+        mCredential = SheetsClient.getInstance(this).getCredential();
 
     }
 
@@ -159,14 +168,11 @@ public class EntryActivity extends AppCompatActivity implements
         String tag = (String) v.getTag();
         if (tag == null) tag = "";
 
-        // haptic feedback
-        Vibrator vibe = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-        if (vibe != null) vibe.vibrate(20);
+        vibrate();
 
         switch (tag) {
             case "del":
-                if (mAmount.length() > 0)
-                    mAmount = mAmount.substring(0, mAmount.length() - 1);
+                mCents /= 10;
                 break;
             case "neg":
                 mNeg *= -1;
@@ -176,13 +182,15 @@ public class EntryActivity extends AppCompatActivity implements
                 return; // we're done
             default:
                 Button b = (Button) v;
-                String key = b.getText().toString();
-                if ((key.equals("0") || key.equals("00")) && getAmount() == 0.0) {
+                CharSequence key = b.getText();
+                if (mCents == 0 && key.charAt(0) == '0') {
                     return; // don't add zeros to a zero
                 }
 
-                if (mAmount.length() < 8) {
-                    mAmount = mAmount.concat(key);
+                if (mCents < MAX_CENTS) {
+                    for (int i = 0; i < key.length(); i++) {
+                        mCents = mCents * 10 + Character.digit(key.charAt(i), 10);
+                    }
                 } else {
                     Toast.makeText(getApplicationContext(), R.string.err_toomuch,
                             Toast.LENGTH_SHORT).show();
@@ -259,15 +267,15 @@ public class EntryActivity extends AppCompatActivity implements
      * Store a new transaction based on the current amount and place
      */
     private void storeTransaction() {
-        Place place = mAdapter.getSelected();
+        PlaceRow row = mAdapter.getSelected();
 
         // check amount and place first
-        if (getAmount() == 0.0) {
+        if (getCents() == 0) {
             Toast.makeText(getApplicationContext(), R.string.err_noamount,
                     Toast.LENGTH_SHORT).show();
             return;
         }
-        if (place == null) {
+        if (row == null) {
             mAdapter.selectItem(0);
             if (mAdapter.getSelected() == null) {
                 Toast.makeText(getApplicationContext(), R.string.err_noplace,
@@ -279,31 +287,43 @@ public class EntryActivity extends AppCompatActivity implements
             return;
         }
 
-        showAnimation();
-
-        // new Transaction with attached place
-        place.updateLastUsed();
-        Transaction tx = new Transaction(getAmount(), place);
-
-        // save place and transaction
+        // save place and transaction, stored places are updated in place to keep their history
+        // even when they were not found as local places (eg. outside the search area)
         Realm realm = Realm.getDefaultInstance();
         realm.beginTransaction();
+        Place place = realm.where(Place.class).equalTo("id", row.getId()).findFirst();
+        if (place == null && !row.isLocal()) place = mAdapter.getPlace(row);
+        if (place == null) {
+            realm.cancelTransaction();
+            realm.close();
+            Toast.makeText(getApplicationContext(), R.string.err_noplace,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        place.markUsed();
+        Transaction tx = new Transaction(getCents(), place);
         realm.copyToRealmOrUpdate(tx);
+        Ledger.record(realm, tx);
+        PlaceIndex.update(realm, place);
         realm.commitTransaction();
         realm.close();
 
+        showAnimation();
+
         // start new task for transferring the data to Google Sheets
         startSheetsSync();
 
         // reset the interface
-        place.setLocal(true);
         mAdapter.selectItem(-1);
-        mAmount = "";
+        mCents = 0;
         updateAmountView();
+        updatePlaceView();
     }
 
     /**
      * Start transferring the stored transactions
+     * <p>
+     * The actual transfer is scheduled, so multiple requests in short succession are merged
      */
     private void startSheetsSync() {
         if (mCredential.getSelectedAccountName() == null) {
@@ -311,8 +331,7 @@ public class EntryActivity extends AppCompatActivity implements
             return;
         }
 
-        SheetsTask task = new SheetsTask(this, mCredential);
-        task.execute();
+        SyncScheduler.getInstance().requestSync(this);
     }
 
     /**
@@ -328,12 +347,12 @@ public class EntryActivity extends AppCompatActivity implements
     @AfterPermissionGranted(REQUEST_PERMISSION_GET_ACCOUNTS)
     private void chooseAccount() {
         if (EasyPermissions.hasPermissions(this, Manifest.permission.GET_ACCOUNTS)) {
-            // get account name from preferences
+            // get account name from the preferences of earlier versions
             String accountName = getPreferences(Context.MODE_PRIVATE)
                     .getString(PREF_ACCOUNT_NAME, null);
             if (accountName != null) {
                 // account has been set, retry the sync task
-                mCredential.setSelectedAccountName(accountName);
+                SheetsClient.getInstance(this).setAccountName(accountName);
                 // check if stored account name is correct
                 if (mCredential.getSelectedAccountName() != null) {
                     startSheetsSync();
@@ -378,12 +397,7 @@ public class EntryActivity extends AppCompatActivity implements
                     String accountName =
                             data.getStringExtra(AccountManager.KEY_ACCOUNT_NAME);
                     if (accountName != null) {
-                        SharedPreferences settings =
-                                getPreferences(Context.MODE_PRIVATE);
-                        SharedPreferences.Editor editor = settings.edit();
-                        editor.putString(PREF_ACCOUNT_NAME, accountName);
-                        editor.apply();
-                        mCredential.setSelectedAccountName(accountName);
+                        SheetsClient.getInstance(this).setAccountName(accountName);
 
                         // try the sync task again
                         startSheetsSync();
@@ -401,33 +415,53 @@ public class EntryActivity extends AppCompatActivity implements
 
 
     /**
-     * Get the current amount as float
+     * Get the current amount
      *
-     * @return the amount
+     * @return the amount in cents
      */
-    private float getAmount() {
-        if (mAmount.length() == 0) return 0;
-        return Float.parseFloat(mAmount) / 100.0f * mNeg;
+    private long getCents() {
+        return mCents * mNeg;
     }
 
     /**
      * Format the current amount nicely
+     * <p>
+     * This runs on every key press, so the amount is formatted into a reused buffer
      */
     private void updateAmountView() {
-        float amount = getAmount();
-        TextView v = this.findViewById(R.id.textAmount);
-        String value = String.format(Locale.US, "%01.2f", amount);
-        if (amount == 0.0 && mNeg < 0) value = "-".concat(value); // ad negative for zero
-        v.setText(value);
+        long cents = getCents();
+        int len;
+        if (cents == 0 && mNeg < 0) {
+            // add negative for zero
+            mAmountChars[0] = '-';
+            len = Money.format(cents, mAmountChars, 1) + 1;
+        } else {
+            len = Money.format(cents, mAmountChars, 0);
+        }
+        vTextAmount.setText(mAmountChars, 0, len);
+    }
+
+    /**
+     * Short haptic feedback
+     */
+    private void vibrate() {
+        if (mVibrator != null) mVibrator.vibrate(20);
     }
 
     /**
      * Update the place list
      */
     private void updatePlaceView() {
-        mAdapter.clear();
-        TextView tv = findViewById(R.id.textSearch);
-        mAdapter.findNearbyPlaces(mLastLocation, tv.getText().toString());
+        updatePlaceView(0);
+    }
+
+    /**
+     * Update the place list
+     *
+     * @param delay milliseconds to wait before searching Foursquare
+     */
+    private void updatePlaceView(long delay) {
+        mAdapter.findNearbyPlaces(mLastLocation, vTextSearch.getText().toString(), delay);
     }
 
     /**
@@ -472,21 +506,17 @@ public class EntryActivity extends AppCompatActivity implements
     }
 
     /**
-     * Handlers for the ListView
+     * Handlers for the place list
      */
-    private class ListViewHandler implements
-            AdapterView.OnItemClickListener,
-            AdapterView.OnItemLongClickListener {
+    private class PlaceListHandler implements PlacesAdapter.OnPlaceClickListener {
 
         /**
          * Slect place on click
          */
         @Override
-        public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
+        public void onPlaceClick(int i) {
             mAdapter.selectItem(i);
-            // haptic feedback
-            Vibrator vibe = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-            if (vibe != null) vibe.vibrate(20);
+            vibrate();
             closeKeyboard();
         }
 
@@ -494,8 +524,8 @@ public class EntryActivity extends AppCompatActivity implements
          * Delete local places on long press
          */
         @Override
-        public boolean onItemLongClick(AdapterView<?> adapterView, View view, int i, long l) {
-            final Place item = mAdapter.getItem(i);
+        public boolean onPlaceLongClick(int i) {
+            final PlaceRow item = mAdapter.getItem(i);
             if (item == null) return false;
             if (!item.isLocal()) return false;
 
@@ -514,6 +544,7 @@ public class EntryActivity extends AppCompatActivity implements
                                 .equalTo("id", item.getId())
                                 .findAll()
                                 .deleteAllFromRealm();
+                        PlaceIndex.remove(realm, item.getId());
                         realm.commitTransaction();
                     } catch (IllegalStateException e) {
                         Log.e(TAG, "Something went wrong when deleting the item", e);
@@ -541,7 +572,8 @@ public class EntryActivity extends AppCompatActivity implements
     private class SearchTextHandler implements
             View.OnFocusChangeListener,
             TextView.OnEditorActionListener,
-            ClearableEditText.ClearTextListener {
+            ClearableEditText.ClearTextListener,
+            TextWatcher {
 
         /**
          * hide numbers while searching
@@ -572,6 +604,24 @@ public class EntryActivity extends AppCompatActivity implements
         public void onTextCleared(ClearableEditText view) {
             onSearchButtonClick(view);
         }
+
+        @Override
+        public void beforeTextChanged(CharSequence charSequence, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
+        }
+
+        /**
+         * Search while typing
+         * <p>
+         * Local results are updated right away, Foursquare is asked once typing pauses
+         */
+        @Override
+        public void afterTextChanged(Editable editable) {
+            updatePlaceView(SEARCH_DELAY);
+        }
     }
 
 
@@ -0,0 +1,64 @@
+package org.splitbrain.thecashster;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Simple in-memory counters for debugging
+ * <p>
+ * The values are not persisted and are shown in the AboutActivity
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class Metrics {
+
+    private static final Map<String, Long> sCounters = new TreeMap<>();
+
+    /**
+     * Increase the named counter by one
+     */
+    public static void count(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Increase the named counter by the given value
+     */
+    public static synchronized void add(String name, long value) {
+        Long current = sCounters.get(name);
+        sCounters.put(name, current == null ? value : current + value);
+    }
+
+    /**
+     * Record the duration of an operation
+     * <p>
+     * This keeps a counter for the number of operations and one for the total time
+     *
+     * @param name     the name of the operation
+     * @param duration the duration in milliseconds
+     */
+    public static synchronized void time(String name, long duration) {
+        add(name + ".count", 1);
+        add(name + ".ms", duration);
+    }
+
+    /**
+     * Get the current value of the named counter
+     */
+    public static synchronized long get(String name) {
+        Long current = sCounters.get(name);
+        return current == null ? 0 : current;
+    }
+
+    /**
+     * Get all counters as human readable text
+     */
+    public static synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : sCounters.entrySet()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package org.splitbrain.thecashster;
+
+import android.support.annotation.Nullable;
+
+import org.splitbrain.thecashster.model.Place;
+import org.splitbrain.thecashster.model.PlaceRow;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Scores places by how likely the user wants to pick them
+ * <p>
+ * The score combines the distance, how recently and how often a place was used and how well
+ * its name matches the search filter. Higher is better. Places are inserted into an already
+ * ranked list at their position, so results arriving later don't require resorting.
+ * <p>
+ * Local places are ranked in the background while they are loaded, so scoring must not
+ * modify the ranker.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceRanker {
+
+    // score for entries that should always be listed last
+    static final float LAST = -1.0f;
+
+    private static final float WEIGHT_DISTANCE = 0.35f;
+    private static final float WEIGHT_RECENCY = 0.25f;
+    private static final float WEIGHT_FREQUENCY = 0.25f;
+    private static final float WEIGHT_TEXT = 0.4f;
+
+    // usage of a place loses half its weight within this time
+    private static final double RECENCY_HALFLIFE = 14 * 24 * 60 * 60 * 1000.0;
+    // a place used this often gets the full frequency score
+    private static final double FREQUENCY_FULL = Math.log1p(50);
+
+    private final int mRadius;
+    private final String mFilter;
+    private final long mNow;
+    private Map<String, Float> mTextScores = null;
+
+    /**
+     * @param radius the current search radius in meters
+     * @param filter the current search string
+     */
+    PlaceRanker(int radius, String filter) {
+        mRadius = Math.max(radius, 1);
+        mFilter = filter.trim().toLowerCase(Locale.getDefault());
+        mNow = System.currentTimeMillis();
+    }
+
+    /**
+     * Use the given text scores from the PlaceIndex instead of matching names ourselves
+     *
+     * @param scores place IDs mapped to a score between 0 and 1
+     */
+    void setTextScores(Map<String, Float> scores) {
+        mTextScores = scores;
+    }
+
+    /**
+     * Calculate the score for the given place
+     */
+    float score(Place place) {
+        return score(place, place.getDistance(), place.isLocal(), mTextScores);
+    }
+
+    /**
+     * Calculate the score for the given place
+     *
+     * @param place      the place, may be a managed object
+     * @param distance   the distance to the place in meters
+     * @param local      is this a locally stored place?
+     * @param textScores scores from the PlaceIndex, null to match names ourselves
+     */
+    public float score(Place place, int distance, boolean local,
+                       @Nullable Map<String, Float> textScores) {
+        float score = 0.0f;
+
+        // nearer is better, anything outside twice the radius is equally far
+        float far = Math.min(distance / (2.0f * mRadius), 1.0f);
+        score += WEIGHT_DISTANCE * (1.0f - far);
+
+        // only our own places have a meaningful usage history
+        if (local) {
+            double age = Math.max(mNow - place.getLastused().getTime(), 0);
+            score += WEIGHT_RECENCY * Math.pow(0.5, age / RECENCY_HALFLIFE);
+            score += WEIGHT_FREQUENCY
+                    * Math.min(Math.log1p(place.getUsecount()) / FREQUENCY_FULL, 1.0);
+        }
+
+        if (!mFilter.isEmpty()) {
+            Float indexed = textScores == null ? null : textScores.get(place.getId());
+            score += WEIGHT_TEXT * (indexed != null ? indexed : textMatch(place.getName()));
+        }
+
+        return score;
+    }
+
+    /**
+     * Check if the given place matches the filter at all
+     */
+    boolean matches(Place place) {
+        return matches(place, mTextScores);
+    }
+
+    /**
+     * Check if the given place matches the filter at all
+     * <p>
+     * Places missing from the PlaceIndex scores may still contain the filter within a word
+     * or be matched by a filter too short for the index
+     *
+     * @param place      the place, may be a managed object
+     * @param textScores scores from the PlaceIndex, null to match names ourselves
+     */
+    public boolean matches(Place place, @Nullable Map<String, Float> textScores) {
+        if (mFilter.isEmpty()) return true;
+        if (textScores != null && textScores.containsKey(place.getId())) return true;
+        return textMatch(place.getName()) > 0;
+    }
+
+    /**
+     * How well the given name matches the filter
+     *
+     * @return 1 for a prefix match, less for matches of later words or within words
+     */
+    private float textMatch(String name) {
+        String haystack = name.toLowerCase(Locale.getDefault());
+        int pos = haystack.indexOf(mFilter);
+        if (pos == 0) return 1.0f;
+        if (pos < 0) return 0.0f;
+        if (!Character.isLetterOrDigit(haystack.charAt(pos - 1))) return 0.7f;
+        return 0.4f;
+    }
+
+    /**
+     * Find the position to insert a place with the given score into a ranked list
+     * <p>
+     * Places with equal scores keep the order they were added in
+     */
+    static int findPosition(List<PlaceRow> ranked, float score) {
+        int low = 0;
+        int high = ranked.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ranked.get(mid).getScore() >= score) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
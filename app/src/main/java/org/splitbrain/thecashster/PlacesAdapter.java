@@ -2,88 +2,177 @@ package org.splitbrain.thecashster;
 
 import android.content.Context;
 import android.location.Location;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.RadioButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.LatLngBounds;
-import com.google.maps.android.SphericalUtil;
 
 import org.splitbrain.thecashster.Tasks.AsyncHandlerTask;
-import org.splitbrain.thecashster.Tasks.FourSquareTask;
+import org.splitbrain.thecashster.Tasks.FourSquareCache;
+import org.splitbrain.thecashster.Tasks.LocalPlacesTask;
+import org.splitbrain.thecashster.Tasks.PlaceDiffTask;
+import org.splitbrain.thecashster.Tasks.PlaceSearchCoordinator;
+import org.splitbrain.thecashster.model.Distance;
 import org.splitbrain.thecashster.model.Place;
+import org.splitbrain.thecashster.model.PlaceRow;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
-import io.realm.Case;
-import io.realm.Realm;
-import io.realm.RealmQuery;
-import io.realm.Sort;
-
 import static java.lang.Math.round;
 
 /**
  * This adapter manages the list of available places
  * <p>
  * It's used in the EntryActivity. The adapter takes care of fetching the necessary data
- * to display on it's own when the findNearbyPlaces() method is called and thus can be
- * initialized with an empty list.
+ * to display on it's own when the findNearbyPlaces() method is called.
+ * <p>
+ * Places are kept ranked by the PlaceRanker. New places are inserted at their rank, the custom
+ * place is always listed last.
+ * <p>
+ * The list itself only holds immutable PlaceRows. Rows that did not change are reused between
+ * refreshes. The full Place objects are only kept for places that are not stored locally yet,
+ * local ones are looked up by their ID when needed.
+ * <p>
+ * Shown lists are never modified. Changes are applied by calculating the difference to a new
+ * list in the background and dispatching only the changed rows to the RecyclerView. When
+ * another change comes in before that finished, the older one is dropped.
  *
  * @author Andreas Gohr andi@splitbrain.org
  */
-public class PlacesAdapter extends ArrayAdapter<Place> {
+public class PlacesAdapter extends RecyclerView.Adapter<PlacesAdapter.ViewHolder> {
+
+    // payload for rebinding rows whose selection changed
+    private static final Object PAYLOAD_SELECTION = new Object();
 
     private Context mContext;
-    private int mSelected = -1;
-    private final ArrayList<Place> mItems;
+    private OnPlaceClickListener mClickListener = null;
+    // the currently shown rows
+    private List<PlaceRow> mItems = new ArrayList<>();
+    // the rows that will be shown once pending changes are applied
+    private List<PlaceRow> mTarget = mItems;
+    // all rows in mTarget by their place ID for duplicate checks and reuse
+    private HashMap<String, PlaceRow> mRows = new HashMap<>();
+    // the Foursquare places in mTarget by their ID
+    private final HashMap<String, Place> mPlaces = new HashMap<>();
+    private Place mCustom = null;
+    private String mSelectedId = null;
+    private PlaceDiffTask mDiffTask = null;
+    private final PlaceSearchCoordinator mSearch = new PlaceSearchCoordinator();
+    private PlaceRanker mRanker = new PlaceRanker(1, "");
+    private final Handler mHandler = new Handler();
+    private Runnable mPendingSearch = null;
+    private LocalPlacesTask mLocalTask = null;
+    // when the search whose local results are about to be shown was requested
+    private long mRenderRequested = 0;
+
+    /**
+     * Interface for clicks on the rows
+     */
+    interface OnPlaceClickListener {
+        void onPlaceClick(int position);
+
+        boolean onPlaceLongClick(int position);
+    }
 
     /**
      * Constructor
      */
-    PlacesAdapter(@NonNull Context context, ArrayList<Place> items) {
-        super(context, -1, items);
-        mItems = items; // keep a reference to the items
+    PlacesAdapter(@NonNull Context context) {
         mContext = context;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Attach callback to be notified when a row is clicked
+     */
+    void setOnPlaceClickListener(OnPlaceClickListener listener) {
+        mClickListener = listener;
     }
 
     /**
      * Marks the item at the given position as selected
      * <p>
      * We only allow one Item to be selected at a time. So this unselects any previously
-     * selected item.
+     * selected item. Only the two affected rows are rebound.
      *
      * @param position The position of the item to select
      */
     void selectItem(int position) {
-        mSelected = position;
-        notifyDataSetChanged();
+        String previous = mSelectedId;
+        PlaceRow row = getItem(position);
+        mSelectedId = row == null ? null : row.getId();
+
+        notifySelection(previous);
+        notifySelection(mSelectedId);
     }
 
+    /**
+     * Rebind the selection state of the row with the given place ID
+     */
+    private void notifySelection(@Nullable String id) {
+        if (id == null) return;
+        for (int i = 0; i < mItems.size(); i++) {
+            if (mItems.get(i).getId().equals(id)) {
+                notifyItemChanged(i, PAYLOAD_SELECTION);
+                return;
+            }
+        }
+    }
 
     /**
      * Return the currently selected Item
      */
     @Nullable
-    Place getSelected() {
-        if (mSelected < 0) return null;
-        try {
-            return getItem(mSelected);
-        } catch (java.lang.IndexOutOfBoundsException ignored) {
-            mSelected = -1;
-            return null;
-        }
+    PlaceRow getSelected() {
+        if (mSelectedId == null) return null;
+        return mRows.get(mSelectedId);
     }
 
+    /**
+     * Return the item at the given position
+     */
+    @Nullable
+    PlaceRow getItem(int position) {
+        if (position < 0 || position >= mItems.size()) return null;
+        return mItems.get(position);
+    }
+
+    /**
+     * Get the full place for a row that is not stored locally
+     *
+     * @return the place or null if it's not known (local places need to be loaded by ID)
+     */
+    @Nullable
+    Place getPlace(PlaceRow row) {
+        if (mCustom != null && mCustom.getId().equals(row.getId())) return mCustom;
+        return mPlaces.get(row.getId());
+    }
+
+    /**
+     * Remove the given row from the list
+     */
+    void remove(PlaceRow row) {
+        ArrayList<PlaceRow> target = new ArrayList<>(mTarget);
+        if (!target.remove(row)) return;
+        mRows.remove(row.getId());
+        mPlaces.remove(row.getId());
+        if (row.getId().equals(mSelectedId)) mSelectedId = null;
+        submit(target);
+    }
 
     /**
      * Triggers updating the list of items based on the given location and filter
@@ -92,65 +181,250 @@ public class PlacesAdapter extends ArrayAdapter<Place> {
      * @param filter   the currently entered search string
      */
     void findNearbyPlaces(@Nullable Location location, String filter) {
+        findNearbyPlaces(location, filter, 0);
+    }
+
+    /**
+     * Triggers updating the list of items based on the given location and filter
+     * <p>
+     * Local places are loaded in the background and shown as soon as they are available, the
+     * Foursquare search can be delayed. Calling this again supersedes the pending local and
+     * Foursquare searches. Results of the previous search that still match the filter are kept
+     * until the new ones arrive.
+     *
+     * @param location the user's current location as returned by Google Play Services
+     * @param filter   the currently entered search string
+     * @param delay    milliseconds to wait before searching Foursquare
+     */
+    void findNearbyPlaces(@Nullable final Location location, final String filter, long delay) {
+        if (mPendingSearch != null) {
+            mHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
         if (location == null) {
-            Toast.makeText(mContext, R.string.err_nolocation,
-                    Toast.LENGTH_SHORT).show();
+            cancelLocalSearch();
+            mSearch.cancel();
+            if (delay == 0) {
+                Toast.makeText(mContext, R.string.err_nolocation,
+                        Toast.LENGTH_SHORT).show();
+            }
             return;
         }
 
-        // load our own places here
-        loadLocalPlaces(location, filter);
-        addCustomPlace(location, filter);
-        loadFoursquarePlaces(location, filter);
+        mRanker = new PlaceRanker(calculateRadius(location), filter);
+        loadLocalPlaces(location, filter, SystemClock.uptimeMillis());
+
+        if (delay == 0) {
+            loadFoursquarePlaces(location, filter);
+        } else {
+            mSearch.cancel();
+            mPendingSearch = new Runnable() {
+                @Override
+                public void run() {
+                    loadFoursquarePlaces(location, filter);
+                }
+            };
+            mHandler.postDelayed(mPendingSearch, delay);
+        }
+    }
+
+    /**
+     * Replace the list with the given rows
+     * <p>
+     * The rows are ranked and the custom place is added last. Nothing happens when the list
+     * would look exactly the same and the selection stays on the same place if possible.
+     *
+     * @param rows   the rows to show
+     * @param custom the custom place, may be null
+     */
+    private void showPlaces(List<PlaceRow> rows, @Nullable Place custom) {
+        ArrayList<PlaceRow> target = new ArrayList<>(rows.size() + 1);
+        HashMap<String, PlaceRow> ids = new HashMap<>();
+        for (PlaceRow row : rows) {
+            if (ids.containsKey(row.getId())) continue;
+            row = reuse(row);
+            ids.put(row.getId(), row);
+            target.add(row);
+        }
+        Collections.sort(target, new Comparator<PlaceRow>() {
+            @Override
+            public int compare(PlaceRow r1, PlaceRow r2) {
+                return Float.compare(r2.getScore(), r1.getScore());
+            }
+        });
+        mCustom = null;
+        if (custom != null && !ids.containsKey(custom.getId())) {
+            PlaceRow row = reuse(PlaceRow.create(custom, 0, false, PlaceRanker.LAST));
+            ids.put(row.getId(), row);
+            target.add(row);
+            mCustom = custom;
+        }
+        mPlaces.keySet().retainAll(ids.keySet());
+        if (mSelectedId != null && !ids.containsKey(mSelectedId)) mSelectedId = null;
+
+        if (isShowing(target)) return;
+
+        mRows = ids;
+        submit(target);
+    }
+
+    /**
+     * Use the current row instead of the given one if they look the same
+     */
+    private PlaceRow reuse(PlaceRow row) {
+        PlaceRow current = mRows.get(row.getId());
+        return row.sameAs(current) ? current : row;
+    }
+
+    /**
+     * Check if the given list would look exactly like the current one
+     * <p>
+     * Unchanged rows are reused, so comparing the instances is enough
+     */
+    private boolean isShowing(List<PlaceRow> rows) {
+        if (rows.size() != mTarget.size()) return false;
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i) != mTarget.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Show the given list once the changes to the current one are known
+     * <p>
+     * The list may not be modified afterwards
+     */
+    private void submit(List<PlaceRow> target) {
+        mTarget = target;
+        if (mDiffTask != null) mDiffTask.cancel(false);
+
+        mDiffTask = new PlaceDiffTask(mItems, target);
+        mDiffTask.setOnTaskCompleted(new AsyncHandlerTask.OnTaskCompleted() {
+            @Override
+            public void onTaskCompleted(AsyncHandlerTask task) {
+                if (task != mDiffTask) return; // superseded
+                mDiffTask = null;
+
+                PlaceDiffTask pdt = (PlaceDiffTask) task;
+                mItems = pdt.getRows();
+                pdt.getResult().dispatchUpdatesTo(PlacesAdapter.this);
+                rendered();
+            }
+        });
+        mDiffTask.setOnTaskCancelled(new AsyncHandlerTask.OnTaskCancelled() {
+            @Override
+            public void onTaskCancelled(AsyncHandlerTask task) {
+                if (task != mDiffTask) return; // superseded
+                mDiffTask = null;
+
+                // the diff could not be calculated, show the whole list instead
+                mItems = ((PlaceDiffTask) task).getRows();
+                notifyDataSetChanged();
+                rendered();
+            }
+        });
+        mDiffTask.execute();
     }
 
     /**
      * Load matching nearby places from foursquare
+     * <p>
+     * A previous search that is still running is superseded by this one
      */
     private void loadFoursquarePlaces(final Location location, final String filter) {
         LatLng ll = new LatLng(location.getLatitude(), location.getLongitude());
-        FourSquareTask fst = new FourSquareTask(
+        mSearch.search(
                 mContext.getResources().getString(R.string.FourSquareClientID),
                 mContext.getResources().getString(R.string.FourSquareClientSecret),
                 ll,
                 calculateRadius(location),
-                filter
+                filter,
+                FourSquareCache.getInstance(mContext),
+                new PlaceSearchCoordinator.OnPlacesFound() {
+                    @Override
+                    public void onPlacesFound(List<Place> places) {
+                        replacePlaces(places);
+                    }
+                }
         );
-        fst.setOnTaskCompleted(new AsyncHandlerTask.OnTaskCompleted() {
+    }
+
+    /**
+     * Find locally stored places nearby in the background
+     * <p>
+     * Once found, they are shown together with the Foursquare results that still match the
+     * filter. Results of a superseded search are dropped. Should the task fail or be rejected
+     * by a busy pool, the Foursquare results are shown on their own.
+     */
+    private void loadLocalPlaces(Location location, String filter, final long requested) {
+        cancelLocalSearch();
+
+        final Place custom = createCustomPlace(location, filter);
+        final LatLng ll = new LatLng(location.getLatitude(), location.getLongitude());
+        mLocalTask = new LocalPlacesTask(ll, calculateRadius(location), filter, mRanker);
+        mLocalTask.setOnTaskCompleted(new AsyncHandlerTask.OnTaskCompleted() {
             @Override
             public void onTaskCompleted(AsyncHandlerTask task) {
-                addAll(((FourSquareTask) task).getPlaces());
+                if (task != mLocalTask) return; // superseded
+                mLocalTask = null;
+
+                LocalPlacesTask lpt = (LocalPlacesTask) task;
+                mRanker.setTextScores(lpt.getTextScores());
+                showLocalPlaces(lpt.getRows(), custom, ll, requested);
+            }
+        });
+        mLocalTask.setOnTaskCancelled(new AsyncHandlerTask.OnTaskCancelled() {
+            @Override
+            public void onTaskCancelled(AsyncHandlerTask task) {
+                if (task != mLocalTask) return; // superseded
+                mLocalTask = null;
+
+                Metrics.count("search.local.failed");
+                showLocalPlaces(Collections.<PlaceRow>emptyList(), custom, ll, requested);
             }
         });
-        fst.execute();
+        mLocalTask.execute();
     }
 
     /**
-     * Find locally stored places nearby
+     * Show the given local rows together with the Foursquare places matching the filter
      * <p>
-     * Adds the result ordered by lastUsed date. Nearby places are found through a bounding box
-     * based on the locations accuracy
+     * The Foursquare places are those of an earlier search, they are kept until the results of
+     * the current one arrive. Their distances are updated to the new location.
+     *
+     * @param location  the location the local rows were found for
+     * @param requested when the search was requested, to measure how long it took
      */
-    private void loadLocalPlaces(Location location, String filter) {
-        LatLng ll = new LatLng(location.getLatitude(), location.getLongitude());
-        LatLngBounds bnd = toBounds(ll, calculateRadius(location));
-
-        Realm realm = Realm.getDefaultInstance();
-        RealmQuery<Place> query = realm.where(Place.class);
-        query.between("lat", bnd.southwest.latitude, bnd.northeast.latitude);
-        query.between("lon", bnd.southwest.longitude, bnd.northeast.longitude);
-        if (filter.length() > 0) {
-            query.contains("name", filter, Case.INSENSITIVE);
+    private void showLocalPlaces(List<PlaceRow> local, @Nullable Place custom, LatLng location,
+                                 long requested) {
+        List<Place> carried = new ArrayList<>(mPlaces.values());
+        Distance.apply(location, carried);
+
+        List<PlaceRow> rows = new ArrayList<>(local);
+        for (Place place : carried) {
+            if (mRanker.matches(place)) rows.add(createRow(place));
         }
+        mRenderRequested = requested;
+        showPlaces(rows, custom);
+        if (mDiffTask == null) rendered(); // the list already looks like this
+    }
 
-        List<Place> results = realm.copyFromRealm(query.findAllSorted("lastused", Sort.DESCENDING));
-        for (Place result : results) {
-            result.setLocal(true);
-            result.setDistanceFrom(ll);
-            add(result);
-        }
+    /**
+     * Record the time from the search request to the list showing its local results
+     */
+    private void rendered() {
+        if (mRenderRequested == 0) return;
+        Metrics.time("search.render", SystemClock.uptimeMillis() - mRenderRequested);
+        mRenderRequested = 0;
+    }
 
-        realm.close();
+    /**
+     * Cancel the running local search if any
+     */
+    private void cancelLocalSearch() {
+        if (mLocalTask == null) return;
+        mLocalTask.cancel(false);
+        mLocalTask = null;
     }
 
     /**
@@ -161,10 +435,13 @@ public class PlacesAdapter extends ArrayAdapter<Place> {
     }
 
     /**
-     * Adds a custom place
+     * Creates a custom place
+     *
+     * @return the place or null if there is no filter to name it by
      */
-    private void addCustomPlace(Location ll, String filter) {
-        if (filter.length() == 0) return;
+    @Nullable
+    private Place createCustomPlace(Location ll, String filter) {
+        if (filter.length() == 0) return null;
 
         Place custom = new Place();
         custom.setCategory("Custom");
@@ -172,113 +449,142 @@ public class PlacesAdapter extends ArrayAdapter<Place> {
         custom.setLon(ll.getLongitude());
         custom.setName(filter);
         custom.setInfo("Create new Place");
-        add(custom);
+        return custom;
     }
 
     /**
-     * Creates a bounding box around the given location
-     *
-     * @param center         the current location
-     * @param radiusInMeters the distance from that location to make the bounding box
-     * @return the bounding box
-     * @link https://stackoverflow.com/a/31029389/172068
+     * Create a ranked row for a place that is not stored locally
      */
-    @NonNull
-    private LatLngBounds toBounds(LatLng center, double radiusInMeters) {
-        double distanceFromCenterToCorner = radiusInMeters * Math.sqrt(2.0);
-        LatLng southwestCorner =
-                SphericalUtil.computeOffset(center, distanceFromCenterToCorner, 225.0);
-        LatLng northeastCorner =
-                SphericalUtil.computeOffset(center, distanceFromCenterToCorner, 45.0);
-        return new LatLngBounds(southwestCorner, northeastCorner);
+    private PlaceRow createRow(Place place) {
+        return PlaceRow.create(place, place.getDistance(), false, mRanker.score(place));
+    }
+
+    // region RecyclerView.Adapter
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).getStableId();
     }
 
     /**
-     * Create the view for each row of places
+     * Create the view for a row of places
      */
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        View rowView = convertView;
-        if (rowView == null) {
-            LayoutInflater inflater = (LayoutInflater) mContext
-                    .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            assert inflater != null;
-            rowView = inflater.inflate(R.layout.places_row, parent, false);
-
-            ViewHolder viewHolder = new ViewHolder();
-            viewHolder.first = rowView.findViewById(R.id.firstLine);
-            viewHolder.second = rowView.findViewById(R.id.secondLine);
-            viewHolder.radio = rowView.findViewById(R.id.radioSelect);
-            viewHolder.star = rowView.findViewById(R.id.imageStar);
-
-            rowView.setTag(viewHolder);
-        }
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View rowView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.places_row, parent, false);
+        return new ViewHolder(rowView);
+    }
 
-        ViewHolder holder = (ViewHolder) rowView.getTag();
-        Place item = getItem(position);
-        assert item != null;
-
-        String info = item.getInfo();
-        if (info.length() == 0) {
-            info = item.getAddress()
-                    .concat(" [")
-                    .concat(item.getCategory())
-                    .concat("]")
-                    .concat(" ")
-                    .concat(String.valueOf(item.getDistance()))
-                    .concat("m");
-        }
+    /**
+     * Fill a row with the place at the given position
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        PlaceRow item = mItems.get(position);
 
         holder.first.setText(item.getName());
-        holder.second.setText(info);
-        holder.radio.setChecked(mSelected == position);
+        holder.second.setText(item.getInfo());
+        holder.radio.setChecked(item.getId().equals(mSelectedId));
         if (item.isLocal()) {
             holder.star.setVisibility(View.VISIBLE);
         } else {
             holder.star.setVisibility(View.GONE);
         }
-
-        return rowView;
     }
 
     /**
-     * Hold the views for a row item
+     * Only update the selection state when nothing else changed
      */
-    static class ViewHolder {
-        TextView first;
-        TextView second;
-        RadioButton radio;
-        ImageView star;
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        holder.radio.setChecked(mItems.get(position).getId().equals(mSelectedId));
     }
 
-    // region Overrides
+    // endregion
 
-    @Override
-    public void addAll(@NonNull Collection<? extends Place> collection) {
-        for (Place x : collection) {
-            add(x);
+    /**
+     * Replace the Foursquare places in the list with the results of the current search
+     * <p>
+     * Local places and the custom place stay where they are, the new places are inserted at
+     * their rank. Places of earlier searches that were not found again are removed.
+     */
+    private void replacePlaces(List<Place> places) {
+        HashMap<String, PlaceRow> previous = new HashMap<>(mRows);
+        ArrayList<PlaceRow> target = new ArrayList<>(mTarget.size() + places.size());
+        for (PlaceRow row : mTarget) {
+            if (mPlaces.containsKey(row.getId())) {
+                mRows.remove(row.getId());
+            } else {
+                target.add(row);
+            }
         }
-    }
+        mPlaces.clear();
 
-    @Override
-    public void add(@Nullable Place object) {
-        if (object == null) return;
-        if (mItems.contains(object)) return;
-        super.add(object);
-    }
+        for (Place place : places) {
+            if (mRows.containsKey(place.getId())) continue;
 
-    @Override
-    public void clear() {
-        super.clear();
-        mSelected = -1;
-    }
+            PlaceRow row = createRow(place);
+            if (row.sameAs(previous.get(row.getId()))) row = previous.get(row.getId());
+            target.add(PlaceRanker.findPosition(target, row.getScore()), row);
+            mRows.put(row.getId(), row);
+            mPlaces.put(place.getId(), place);
+        }
+        if (mSelectedId != null && !mRows.containsKey(mSelectedId)) mSelectedId = null;
 
-    @Override
-    public void remove(@Nullable Place object) {
-        super.remove(object);
-        mSelected = -1;
+        if (isShowing(target)) return;
+        submit(target);
     }
 
-    // endregion
+    /**
+     * Hold the views for a row item and pass on clicks
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements
+            View.OnClickListener,
+            View.OnLongClickListener {
+        final TextView first;
+        final TextView second;
+        final RadioButton radio;
+        final ImageView star;
+
+        ViewHolder(View rowView) {
+            super(rowView);
+            first = rowView.findViewById(R.id.firstLine);
+            second = rowView.findViewById(R.id.secondLine);
+            radio = rowView.findViewById(R.id.radioSelect);
+            star = rowView.findViewById(R.id.imageStar);
+
+            rowView.setOnClickListener(this);
+            rowView.setOnLongClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (mClickListener == null || position == RecyclerView.NO_POSITION) return;
+            mClickListener.onPlaceClick(position);
+        }
+
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            if (mClickListener == null || position == RecyclerView.NO_POSITION) return false;
+            return mClickListener.onPlaceLongClick(position);
+        }
+    }
 }
@@ -1,15 +1,34 @@
 package org.splitbrain.thecashster.Tasks;
 
-import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.splitbrain.thecashster.Metrics;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * This AsyncTask returns itself and notifies a set handler
+ * A background task that returns itself and notifies a set handler
+ * <p>
+ * Works like an AsyncTask but runs in one of the TaskExecutor pools depending on its
+ * priority. Results and cancellations are delivered on the main thread. The time each task
+ * spent waiting in the queue and running is recorded in the Metrics.
  *
  * @author Andreas Gohr andi@splitbrain.org
  */
-abstract public class AsyncHandlerTask<Params, Progress> extends AsyncTask<Params, Progress, AsyncHandlerTask> {
+abstract public class AsyncHandlerTask<Params> {
+    private static final String TAG = "AsyncHandlerTask";
 
     private OnTaskCompleted mListener;
+    private OnTaskCancelled mCancelListener;
+
+    private final AtomicBoolean mCancelled = new AtomicBoolean(false);
+    private final AtomicBoolean mStarted = new AtomicBoolean(false);
+    private final AtomicBoolean mFinished = new AtomicBoolean(false);
+    private Future<?> mFuture = null;
+    private RuntimeException mCrash = null;
 
     /**
      * Interface for TaskCompleted Listener
@@ -18,6 +37,13 @@ abstract public class AsyncHandlerTask<Params, Progress> extends AsyncTask<Param
         void onTaskCompleted(AsyncHandlerTask task);
     }
 
+    /**
+     * Interface for TaskCancelled Listener
+     */
+    public interface OnTaskCancelled {
+        void onTaskCancelled(AsyncHandlerTask task);
+    }
+
     /**
      * Attach callback to be notified when task completed
      */
@@ -25,6 +51,124 @@ abstract public class AsyncHandlerTask<Params, Progress> extends AsyncTask<Param
         mListener = listener;
     }
 
+    /**
+     * Attach callback to be notified when the task was cancelled
+     */
+    public void setOnTaskCancelled(OnTaskCancelled listener) {
+        mCancelListener = listener;
+    }
+
+    /**
+     * Do the actual work, runs in a background thread
+     *
+     * @return this class
+     */
+    abstract protected AsyncHandlerTask doInBackground(Params... params);
+
+    /**
+     * The pool to run this task in
+     *
+     * @return one of the TaskExecutor.PRIORITY_* constants
+     */
+    protected int getPriority() {
+        return TaskExecutor.PRIORITY_BACKGROUND;
+    }
+
+    /**
+     * Start the task
+     * <p>
+     * Has to be called from the main thread. Each task can be executed only once.
+     */
+    @SafeVarargs
+    public final AsyncHandlerTask<Params> execute(final Params... params) {
+        if (mFuture != null) throw new IllegalStateException("Task has already been executed");
+
+        final String name = "task." + getClass().getSimpleName();
+        final long queued = SystemClock.elapsedRealtime();
+        try {
+            mFuture = TaskExecutor.submit(getPriority(), new Runnable() {
+                @Override
+                public void run() {
+                    if (!mStarted.compareAndSet(false, true)) return; // cancelled while queued
+
+                    long started = SystemClock.elapsedRealtime();
+                    Metrics.time(name + ".wait", started - queued);
+                    AsyncHandlerTask result = AsyncHandlerTask.this;
+                    try {
+                        result = doInBackground(params);
+                    } catch (RuntimeException e) {
+                        // the pool's future would swallow this, report it as cancellation
+                        Log.e(TAG, name + " failed", e);
+                        Metrics.count(name + ".crashed");
+                        mCrash = e;
+                        mCancelled.set(true);
+                    } finally {
+                        Metrics.time(name + ".run", SystemClock.elapsedRealtime() - started);
+                        finish(result);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Metrics.count(name + ".rejected");
+            cancel(false);
+        }
+        return this;
+    }
+
+    /**
+     * Cancel the task
+     * <p>
+     * A task that has not started yet will not run at all. A running task should check
+     * isCancelled() regularly. Either way, onCancelled() is called instead of onPostExecute().
+     * Tasks that throw from doInBackground() are treated as cancelled, too.
+     *
+     * @param mayInterruptIfRunning interrupt the thread running the task
+     */
+    public final void cancel(boolean mayInterruptIfRunning) {
+        mCancelled.set(true);
+        if (mFuture != null && mFuture.cancel(mayInterruptIfRunning)) {
+            TaskExecutor.purge(getPriority());
+        }
+        if (mStarted.compareAndSet(false, true)) {
+            // never started, so nobody else will report back
+            finish(this);
+        }
+    }
+
+    /**
+     * @return true if the task was cancelled
+     */
+    public final boolean isCancelled() {
+        return mCancelled.get();
+    }
+
+    /**
+     * Getter to access the exception that aborted doInBackground()
+     *
+     * @return null if the task did not crash
+     */
+    public final RuntimeException getCrash() {
+        return mCrash;
+    }
+
+    /**
+     * Deliver the result on the main thread
+     */
+    private void finish(final AsyncHandlerTask result) {
+        if (!mFinished.compareAndSet(false, true)) return;
+
+        TaskExecutor.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    onCancelled(result);
+                } else {
+                    onPostExecute(result);
+                }
+            }
+        });
+    }
+
     /**
      * Call mListener
      *
@@ -35,4 +179,22 @@ abstract public class AsyncHandlerTask<Params, Progress> extends AsyncTask<Param
             mListener.onTaskCompleted(task);
         }
     }
+
+    /**
+     * Called on the main thread when the task was cancelled
+     */
+    protected void onCancelled() {
+    }
+
+    /**
+     * Call mCancelListener
+     *
+     * @param task this class
+     */
+    protected void onCancelled(AsyncHandlerTask task) {
+        onCancelled();
+        if (mCancelListener != null) {
+            mCancelListener.onTaskCancelled(this);
+        }
+    }
 }
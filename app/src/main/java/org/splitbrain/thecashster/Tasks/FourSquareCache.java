@@ -0,0 +1,272 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.splitbrain.thecashster.Metrics;
+import org.splitbrain.thecashster.model.GeoHash;
+import org.splitbrain.thecashster.model.Place;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Caches Foursquare search results
+ * <p>
+ * Results are kept in memory and on disk. They are keyed by the geohash cell of the search
+ * location, the radius bucket and the query, so searching again from about the same spot does
+ * not need another request, even when the location's accuracy changed a bit. Expired entries
+ * are still used when the request fails, eg. when we're offline.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class FourSquareCache {
+
+    private final String TAG = this.getClass().getSimpleName();
+
+    // geohash precision of the location part of the key, 7 chars are about 150m x 150m
+    private static final int KEY_PRECISION = 7;
+    // the smallest search radius, larger ones are doubled from here
+    private static final int MIN_RADIUS = 50;
+    // how long results are considered fresh
+    private static final long TTL = 60 * 60 * 1000;
+    // number of searches to keep in memory
+    private static final int MEMORY_ENTRIES = 32;
+    // number of searches to keep on disk
+    private static final int DISK_ENTRIES = 128;
+    // bump when the file format changes
+    private static final int DISK_VERSION = 1;
+
+    private static FourSquareCache sInstance;
+
+    private final LruCache<String, Entry> mMemory = new LruCache<>(MEMORY_ENTRIES);
+    private final File mDir;
+
+    /**
+     * Access the single cache instance
+     */
+    public static synchronized FourSquareCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FourSquareCache(new File(context.getCacheDir(), "foursquare"));
+        }
+        return sInstance;
+    }
+
+    private FourSquareCache(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * Create the cache key for a search
+     */
+    static String getKey(LatLng ll, int radius, String filter) {
+        return GeoHash.encode(ll.latitude, ll.longitude, KEY_PRECISION)
+                + "|" + getRadius(radius)
+                + "|" + filter.trim().toLowerCase(Locale.getDefault());
+    }
+
+    /**
+     * Round the wanted search radius up to the next bucket
+     * <p>
+     * The radius depends on the location accuracy which changes with almost every fix. Searching
+     * with the bucket radius instead makes repeated searches hit the cache.
+     *
+     * @param radius the wanted radius in meters
+     * @return the radius to search with
+     */
+    static int getRadius(int radius) {
+        int bucket = MIN_RADIUS;
+        while (bucket < radius && bucket < Integer.MAX_VALUE / 2) bucket *= 2;
+        return bucket;
+    }
+
+    /**
+     * Get the cached places for the given key
+     * <p>
+     * Accesses the disk, so don't call from the main thread
+     *
+     * @param key the cache key
+     * @return a copy of the cached entry, possibly expired, or null if nothing is cached
+     */
+    @Nullable
+    synchronized Entry get(String key) {
+        Entry entry = mMemory.get(key);
+        if (entry != null) {
+            Metrics.count("foursquare.cache.memory");
+        } else {
+            entry = readEntry(key);
+            if (entry != null) {
+                Metrics.count("foursquare.cache.disk");
+                mMemory.put(key, entry);
+            }
+        }
+
+        if (entry == null) {
+            Metrics.count("foursquare.cache.miss");
+            return null;
+        }
+        if (!entry.isFresh()) Metrics.count("foursquare.cache.expired");
+
+        List<Place> places = new ArrayList<>(entry.places.size());
+        for (Place place : entry.places) {
+            places.add(copy(place));
+        }
+        return new Entry(entry.time, places);
+    }
+
+    /**
+     * Store the given places
+     * <p>
+     * Accesses the disk, so don't call from the main thread
+     */
+    synchronized void put(String key, List<Place> places) {
+        List<Place> copies = new ArrayList<>(places.size());
+        for (Place place : places) {
+            copies.add(copy(place));
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), copies);
+        mMemory.put(key, entry);
+        writeEntry(key, entry);
+    }
+
+    /**
+     * Copy the cacheable parts of a place
+     */
+    private Place copy(Place place) {
+        Place copy = new Place();
+        copy.setVenue(place.getFoursquare(), place.getName());
+        copy.setAddress(place.getAddress());
+        copy.setCategory(place.getCategory());
+        copy.setLat(place.getLat());
+        copy.setLon(place.getLon());
+        return copy;
+    }
+
+    /**
+     * The file to store the given key in
+     */
+    private File getFile(String key) {
+        return new File(mDir, Integer.toHexString(key.hashCode()) + ".cache");
+    }
+
+    /**
+     * Read an entry from disk
+     *
+     * @return the entry or null if it isn't cached
+     */
+    @Nullable
+    private Entry readEntry(String key) {
+        File file = getFile(key);
+        if (!file.exists()) return null;
+
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != DISK_VERSION) return null;
+                if (!in.readUTF().equals(key)) return null; // hash collision
+
+                long time = in.readLong();
+                int count = in.readInt();
+                List<Place> places = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Place place = new Place();
+                    String foursquare = in.readUTF();
+                    String name = in.readUTF();
+                    place.setVenue(foursquare, name);
+                    place.setAddress(in.readUTF());
+                    place.setCategory(in.readUTF());
+                    place.setLat(in.readDouble());
+                    place.setLon(in.readDouble());
+                    places.add(place);
+                }
+                return new Entry(time, places);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read cache file", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Write an entry to disk and remove the oldest entries if there are too many
+     */
+    private void writeEntry(String key, Entry entry) {
+        if (!mDir.exists() && !mDir.mkdirs()) return;
+
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(getFile(key))));
+            try {
+                out.writeInt(DISK_VERSION);
+                out.writeUTF(key);
+                out.writeLong(entry.time);
+                out.writeInt(entry.places.size());
+                for (Place place : entry.places) {
+                    out.writeUTF(place.getFoursquare());
+                    out.writeUTF(place.getName());
+                    out.writeUTF(place.getAddress());
+                    out.writeUTF(place.getCategory());
+                    out.writeDouble(place.getLat());
+                    out.writeDouble(place.getLon());
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write cache file", e);
+        }
+
+        File[] files = mDir.listFiles();
+        if (files == null || files.length <= DISK_ENTRIES) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - DISK_ENTRIES; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+
+    /**
+     * A cached search result
+     */
+    static class Entry {
+        final long time;
+        final List<Place> places;
+
+        Entry(long time, List<Place> places) {
+            this.time = time;
+            this.places = places;
+        }
+
+        /**
+         * @return false if the entry should only be used when no new results can be had
+         */
+        boolean isFresh() {
+            return System.currentTimeMillis() - time <= TTL;
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package org.splitbrain.thecashster.Tasks;
 
 import android.net.Uri;
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.google.android.gms.maps.model.LatLng;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import org.splitbrain.thecashster.model.Distance;
 import org.splitbrain.thecashster.model.Place;
 
 import java.io.BufferedReader;
@@ -18,19 +16,26 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Andreas Gohr andi@splitbrain.org
  */
 
-public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
+public class FourSquareTask extends AsyncHandlerTask<Void> {
 
     private final String TAG = this.getClass().getSimpleName();
 
+    // how long to wait for the connection and for data, cancelling doesn't stop a blocked read
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+
     private Exception mLastError = null;
     private URL mURL;
     private ArrayList<Place> mPlaces;
     private LatLng mLocation;
+    private FourSquareCache mCache;
+    private String mCacheKey;
 
     /**
      * Ask Foursquare for nearby places
@@ -40,10 +45,14 @@ public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
      * @param ll The current location
      * @param radius The search radius to use
      * @param filter The wanted text filter
+     * @param cache The cache to consult before asking Foursquare
      */
-    public FourSquareTask(String clientId, String secret, LatLng ll, int radius, String filter) {
+    public FourSquareTask(String clientId, String secret, LatLng ll, int radius, String filter,
+                          FourSquareCache cache) {
         mPlaces = new ArrayList<>();
         mLocation = ll;
+        mCache = cache;
+        mCacheKey = FourSquareCache.getKey(ll, radius, filter);
 
         Uri uri = new Uri.Builder()
                 .scheme("https")
@@ -57,7 +66,7 @@ public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
                 .appendQueryParameter("ll", ll.latitude + "," + ll.longitude)
                 .appendQueryParameter("query", filter)
                 .appendQueryParameter("limit", "25")
-                .appendQueryParameter("radius", String.valueOf(radius))
+                .appendQueryParameter("radius", String.valueOf(FourSquareCache.getRadius(radius)))
                 .build();
 
         try {
@@ -68,12 +77,32 @@ public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
         }
     }
 
+    /**
+     * Searches are run in the network pool, so slow requests don't delay local searches
+     */
+    @Override
+    protected int getPriority() {
+        return TaskExecutor.PRIORITY_NETWORK;
+    }
+
     @Override
     protected FourSquareTask doInBackground(Void... voids) {
+        FourSquareCache.Entry cached = mCache.get(mCacheKey);
+        if (cached != null && cached.isFresh()) {
+            useCached(cached.places);
+            return this;
+        }
+
         try {
-            String data = fetchData();
-            parseData(data);
+            fetchData();
+            mCache.put(mCacheKey, mPlaces);
         } catch (Exception e) {
+            // fall back to outdated results
+            if (cached != null) {
+                useCached(cached.places);
+                return this;
+            }
+
             mLastError = e;
             cancel(true);
         }
@@ -82,20 +111,29 @@ public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
     }
 
     /**
-     * Access the foursquare API and get the response body
+     * Fill the places from the cache
+     */
+    private void useCached(List<Place> cached) {
+        Distance.apply(mLocation, cached);
+        mPlaces.clear();
+        mPlaces.addAll(cached);
+    }
+
+    /**
+     * Access the foursquare API and parse the response body while it comes in
      */
-    private String fetchData() throws IOException {
-        StringBuilder stringBuilder = new StringBuilder();
+    private void fetchData() throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) mURL.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        urlConnection.setReadTimeout(READ_TIMEOUT);
         try {
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
-
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                stringBuilder.append(line).append("\n");
+            JsonReader reader = new JsonReader(new BufferedReader(
+                    new InputStreamReader(urlConnection.getInputStream(), "UTF-8")));
+            try {
+                parseData(reader);
+            } finally {
+                reader.close();
             }
-            bufferedReader.close();
-            return stringBuilder.toString();
         } finally {
             urlConnection.disconnect();
         }
@@ -103,30 +141,129 @@ public class FourSquareTask extends AsyncHandlerTask<Void, Void> {
 
     /**
      * Create the list of places from the response
+     * <p>
+     * Only the venues are read, everything else in the response is skipped
+     */
+    private void parseData(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("response")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("venues")) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Place place = parseVenue(reader);
+                    if (place != null) mPlaces.add(place);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Create a single place from a venue object
+     *
+     * @return the place or null if the venue lacks an ID or name
      */
-    private void parseData(String data) throws JSONException {
-        JSONObject json = (JSONObject) new JSONTokener(data).nextValue();
-
-        JSONArray venues = json.getJSONObject("response").getJSONArray("venues");
-        for (int i = 0; i < venues.length(); i++) {
-            Place place = new Place();
-            JSONObject venue = venues.getJSONObject(i);
-            JSONObject loc = venue.getJSONObject("location");
-            JSONArray cat = venue.getJSONArray("categories");
-
-            place.setFoursquare(venue.getString("id"));
-            place.setName(venue.getString("name"));
-            if (loc.has("address"))
-                place.setAddress(loc.getString("address"));
-            if (cat.length() > 0 && cat.getJSONObject(0).has("shortName"))
-                place.setCategory(cat.getJSONObject(0).getString("shortName"));
-            place.setLat(loc.getDouble("lat"));
-            place.setLon(loc.getDouble("lng"));
-            place.setDistanceFrom(mLocation);
-
-            mPlaces.add(place);
+    private Place parseVenue(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String address = null;
+        String category = null;
+        double lat = 0.0;
+        double lon = 0.0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "location":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "address":
+                                address = reader.nextString();
+                                break;
+                            case "lat":
+                                lat = reader.nextDouble();
+                                break;
+                            case "lng":
+                                lon = reader.nextDouble();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "categories":
+                    // we only use the first category
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (category == null) {
+                            category = parseCategory(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
+        reader.endObject();
 
+        if (id == null || name == null) {
+            Log.w(TAG, "Skipping incomplete venue");
+            return null;
+        }
+
+        Place place = new Place();
+        place.setVenue(id, name);
+        if (address != null)
+            place.setAddress(address);
+        if (category != null)
+            place.setCategory(category);
+        place.setLat(lat);
+        place.setLon(lon);
+        place.setDistanceFrom(mLocation);
+        return place;
+    }
+
+    /**
+     * Read the short name of a category object
+     *
+     * @return the short name, an empty string if there is none
+     */
+    private String parseCategory(JsonReader reader) throws IOException {
+        String shortName = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("shortName")) {
+                shortName = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return shortName;
     }
 
     /**
@@ -0,0 +1,96 @@
+package org.splitbrain.thecashster.Tasks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds out what happened to transactions left in flight by an aborted sync
+ * <p>
+ * An append may have reached the spreadsheet even though its answer never arrived. Appends
+ * always go to the end of the spreadsheet, so the rows from the last acknowledged transaction
+ * (the watermark) on tell which of them made it. It only works on the values passed in and has
+ * no side effects, the SheetsTask reads the rows and applies the result.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class InflightResolver {
+
+    // in flight transactions that are in the spreadsheet
+    private final List<String> mAcked = new ArrayList<>();
+    // in flight transactions that need to be sent again
+    private final List<String> mPending = new ArrayList<>();
+
+    private InflightResolver() {
+    }
+
+    /**
+     * Sort the in flight transactions into appended and not appended ones
+     *
+     * @param inflight the TX IDs of the transactions in flight
+     * @param tail     the TX ID column of the spreadsheet from the watermark on
+     * @return the result
+     */
+    public static InflightResolver resolve(List<String> inflight, List<List<Object>> tail) {
+        InflightResolver result = new InflightResolver();
+        Set<String> appended = new HashSet<>();
+        for (List<Object> cells : tail) {
+            if (!cells.isEmpty()) appended.add(String.valueOf(cells.get(0)));
+        }
+
+        for (String txid : inflight) {
+            if (appended.contains(txid)) {
+                result.mAcked.add(txid);
+            } else {
+                result.mPending.add(txid);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check that rows read from the watermark row on still start with the watermark
+     * <p>
+     * When rows above the watermark were deleted, the watermark row points further down and
+     * the tail read from there may miss appended transactions.
+     *
+     * @param tail the TX ID column read from the watermark row on
+     * @param txid the watermark transaction
+     * @return true if the tail can be used
+     */
+    public static boolean startsWith(List<List<Object>> tail, String txid) {
+        return !tail.isEmpty() && !tail.get(0).isEmpty()
+                && txid.equals(String.valueOf(tail.get(0).get(0)));
+    }
+
+    /**
+     * Get the last row number of a range in A1 notation like 'Sheet 1'!A5:I7
+     *
+     * @return the one based row number or 0 if it can't be parsed
+     */
+    public static int getEndRow(String range) {
+        if (range == null) return 0;
+        int end = range.length();
+        int start = end;
+        while (start > 0 && Character.isDigit(range.charAt(start - 1))) start--;
+        if (start == end) return 0;
+        try {
+            return Integer.parseInt(range.substring(start, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // region Getters
+
+    public List<String> getAcked() {
+        return mAcked;
+    }
+
+    public List<String> getPending() {
+        return mPending;
+    }
+
+    // endregion
+}
@@ -0,0 +1,132 @@
+package org.splitbrain.thecashster.Tasks;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.SphericalUtil;
+
+import org.splitbrain.thecashster.PlaceRanker;
+import org.splitbrain.thecashster.model.Distance;
+import org.splitbrain.thecashster.model.GeoHash;
+import org.splitbrain.thecashster.model.Place;
+import org.splitbrain.thecashster.model.PlaceIndex;
+import org.splitbrain.thecashster.model.PlaceRow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.Realm;
+import io.realm.RealmQuery;
+
+/**
+ * Find locally stored places nearby
+ * <p>
+ * Runs the Realm query in the background and hands back ranked PlaceRows that can safely be
+ * used on the main thread. Only the displayed fields are read from the database, places are
+ * not copied as a whole.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class LocalPlacesTask extends AsyncHandlerTask<Void> {
+
+    private final LatLng mLocation;
+    private final int mRadius;
+    private final String mFilter;
+    private final PlaceRanker mRanker;
+    private List<PlaceRow> mRows = new ArrayList<>();
+    private Map<String, Float> mTextScores = new HashMap<>();
+
+    /**
+     * @param ll     The current location
+     * @param radius The search radius to use
+     * @param filter The wanted text filter
+     * @param ranker The ranker to score the rows with
+     */
+    public LocalPlacesTask(LatLng ll, int radius, String filter, PlaceRanker ranker) {
+        mLocation = ll;
+        mRadius = radius;
+        mFilter = filter;
+        mRanker = ranker;
+    }
+
+    /**
+     * The user is waiting for these results
+     */
+    @Override
+    protected int getPriority() {
+        return TaskExecutor.PRIORITY_INTERACTIVE;
+    }
+
+    /**
+     * Nearby places are found through a bounding box based on the radius. The box is first
+     * narrowed down to the geohash cells covering it, so only places within those cells need
+     * to be checked against the exact box. When a filter is given, the text matches are looked
+     * up in the PlaceIndex and the nearby places are checked against them. They are not added
+     * to the query, a short prefix can match thousands of places all over the world. Nearby
+     * places the index does not know are matched by name, that finds filters within words and
+     * single letters, which are too short to be indexed.
+     */
+    @Override
+    protected LocalPlacesTask doInBackground(Void... voids) {
+        LatLngBounds bnd = toBounds(mLocation, mRadius);
+        String[] cells = GeoHash.cover(
+                bnd.southwest.latitude, bnd.southwest.longitude,
+                bnd.northeast.latitude, bnd.northeast.longitude);
+
+        Realm realm = Realm.getDefaultInstance();
+        try {
+            boolean filtered = mFilter.length() > 0;
+            if (filtered) mTextScores = PlaceIndex.search(realm, mFilter);
+
+            RealmQuery<Place> query = realm.where(Place.class);
+            if (cells != null) {
+                query.in("geohash", cells);
+            }
+            query.between("lat", bnd.southwest.latitude, bnd.northeast.latitude);
+            query.between("lon", bnd.southwest.longitude, bnd.northeast.longitude);
+
+            for (Place place : query.findAll()) {
+                if (filtered && !mRanker.matches(place, mTextScores)) continue;
+                int distance = Distance.between(mLocation.latitude, mLocation.longitude,
+                        place.getLat(), place.getLon());
+                float score = mRanker.score(place, distance, true, mTextScores);
+                mRows.add(PlaceRow.create(place, distance, true, score));
+            }
+        } finally {
+            realm.close();
+        }
+        return this;
+    }
+
+    /**
+     * Creates a bounding box around the given location
+     *
+     * @param center         the current location
+     * @param radiusInMeters the distance from that location to make the bounding box
+     * @return the bounding box
+     * @link https://stackoverflow.com/a/31029389/172068
+     */
+    private LatLngBounds toBounds(LatLng center, double radiusInMeters) {
+        double distanceFromCenterToCorner = radiusInMeters * Math.sqrt(2.0);
+        LatLng southwestCorner =
+                SphericalUtil.computeOffset(center, distanceFromCenterToCorner, 225.0);
+        LatLng northeastCorner =
+                SphericalUtil.computeOffset(center, distanceFromCenterToCorner, 45.0);
+        return new LatLngBounds(southwestCorner, northeastCorner);
+    }
+
+    /**
+     * Getter to access the ranked rows once the task completed
+     */
+    public List<PlaceRow> getRows() {
+        return mRows;
+    }
+
+    /**
+     * Getter to access the text match scores of the places once the task completed
+     */
+    public Map<String, Float> getTextScores() {
+        return mTextScores;
+    }
+}
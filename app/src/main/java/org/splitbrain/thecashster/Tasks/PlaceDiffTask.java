@@ -0,0 +1,79 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.support.v7.util.DiffUtil;
+
+import org.splitbrain.thecashster.model.PlaceRow;
+
+import java.util.List;
+
+/**
+ * Calculate the changes between two place lists in the background
+ * <p>
+ * Neither list may be modified while the task runs.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceDiffTask extends AsyncHandlerTask<Void> {
+
+    private final List<PlaceRow> mOld;
+    private final List<PlaceRow> mNew;
+    private DiffUtil.DiffResult mResult = null;
+
+    /**
+     * @param oldRows the currently shown rows
+     * @param newRows the rows to show
+     */
+    public PlaceDiffTask(List<PlaceRow> oldRows, List<PlaceRow> newRows) {
+        mOld = oldRows;
+        mNew = newRows;
+    }
+
+    /**
+     * The list is waiting for the result
+     */
+    @Override
+    protected int getPriority() {
+        return TaskExecutor.PRIORITY_INTERACTIVE;
+    }
+
+    @Override
+    protected PlaceDiffTask doInBackground(Void... voids) {
+        mResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mOld.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mNew.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return mOld.get(oldItemPosition).getId()
+                        .equals(mNew.get(newItemPosition).getId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return mOld.get(oldItemPosition).sameAs(mNew.get(newItemPosition));
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Getter to access the rows the diff leads to
+     */
+    public List<PlaceRow> getRows() {
+        return mNew;
+    }
+
+    /**
+     * Getter to access the calculated changes once the task completed
+     */
+    public DiffUtil.DiffResult getResult() {
+        return mResult;
+    }
+}
@@ -0,0 +1,104 @@
+package org.splitbrain.thecashster.Tasks;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.splitbrain.thecashster.Metrics;
+import org.splitbrain.thecashster.model.Place;
+
+import java.util.List;
+
+/**
+ * Makes sure only the latest Foursquare search delivers results
+ * <p>
+ * Each search increases a generation counter. A running task for an older generation is
+ * cancelled and its results are dropped should they arrive anyway. When the same search is
+ * requested again while it is still running, the running task is reused instead.
+ * <p>
+ * All methods have to be called from the main thread.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceSearchCoordinator implements
+        AsyncHandlerTask.OnTaskCompleted,
+        AsyncHandlerTask.OnTaskCancelled {
+
+    /**
+     * Interface for the receiver of search results
+     */
+    public interface OnPlacesFound {
+        void onPlacesFound(List<Place> places);
+    }
+
+    private int mGeneration = 0;
+    private FourSquareTask mTask = null;
+    private int mTaskGeneration = -1;
+    private String mTaskKey = null;
+    private OnPlacesFound mListener = null;
+
+    /**
+     * Search for places, superseding any previous search
+     *
+     * @param clientId Foursquare API client ID
+     * @param secret   Foursquare API client secret
+     * @param ll       The current location
+     * @param radius   The search radius to use
+     * @param filter   The wanted text filter
+     * @param cache    The cache to consult before asking Foursquare
+     * @param listener Receives the results of this search
+     */
+    public void search(String clientId, String secret, LatLng ll, int radius, String filter,
+                       FourSquareCache cache, OnPlacesFound listener) {
+        mGeneration++;
+        mListener = listener;
+
+        String key = FourSquareCache.getKey(ll, radius, filter);
+        if (mTask != null && key.equals(mTaskKey)) {
+            // same search is already running, hand its results to the new listener
+            Metrics.count("foursquare.search.merged");
+            mTaskGeneration = mGeneration;
+            return;
+        }
+
+        cancel();
+        mTask = new FourSquareTask(clientId, secret, ll, radius, filter, cache);
+        mTaskGeneration = mGeneration;
+        mTaskKey = key;
+        mTask.setOnTaskCompleted(this);
+        mTask.setOnTaskCancelled(this);
+        mTask.execute();
+    }
+
+    /**
+     * Cancel the running search and make sure no outdated results are delivered
+     */
+    public void cancel() {
+        mGeneration++;
+        if (mTask == null) return;
+
+        Metrics.count("foursquare.search.cancelled");
+        mTask.cancel(true);
+        mTask = null;
+        mTaskKey = null;
+    }
+
+    @Override
+    public void onTaskCompleted(AsyncHandlerTask task) {
+        if (task != mTask || mTaskGeneration != mGeneration) {
+            Metrics.count("foursquare.search.stale");
+            return;
+        }
+
+        mTask = null;
+        mTaskKey = null;
+        if (mListener != null) {
+            mListener.onPlacesFound(((FourSquareTask) task).getPlaces());
+        }
+    }
+
+    @Override
+    public void onTaskCancelled(AsyncHandlerTask task) {
+        if (task != mTask) return;
+        mTask = null;
+        mTaskKey = null;
+    }
+}
@@ -0,0 +1,154 @@
+package org.splitbrain.thecashster.Tasks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the spreadsheet's contents with the local ledger
+ * <p>
+ * Users may delete or edit rows in the spreadsheet and retried appends may have added rows
+ * twice. This finds out what needs to be corrected on both sides. It only works on the values
+ * passed in and has no side effects, the SheetsTask applies the result.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class SheetReconciler {
+
+    // removing more than this share of the ledger is considered a mistake
+    private static final float MAX_REMOVED_SHARE = 0.5f;
+    // up to this many removals are always fine, small ledgers are easily cleared by hand
+    private static final int MAX_REMOVED_ALWAYS = 10;
+
+    // rows of the spreadsheet that repeat an earlier TX ID, last row first
+    private final List<Integer> mDuplicateRows = new ArrayList<>();
+    // acknowledged transactions that are no longer in the spreadsheet
+    private final List<String> mRemoved = new ArrayList<>();
+    // transactions whose amount was edited in the spreadsheet, mapped to the new amount
+    private final Map<String, Long> mChanged = new HashMap<>();
+
+    private SheetReconciler() {
+    }
+
+    /**
+     * Plan the corrections
+     *
+     * @param rows   the TX ID and amount columns of the spreadsheet, starting with the header
+     * @param ledger the acknowledged transactions' IDs mapped to their amount in cents
+     * @return the planned corrections
+     */
+    public static SheetReconciler plan(List<List<Object>> rows, Map<String, Long> ledger) {
+        SheetReconciler plan = new SheetReconciler();
+        Set<String> seen = new HashSet<>();
+
+        for (int i = 1; i < rows.size(); i++) {
+            List<Object> row = rows.get(i);
+            String txid = getCell(row, 0);
+            if (txid.isEmpty()) continue;
+
+            if (!seen.add(txid)) {
+                plan.mDuplicateRows.add(i);
+                continue;
+            }
+
+            Long cents = ledger.get(txid);
+            if (cents == null) continue; // not ours or not acknowledged yet
+            Long sheetCents = parseCents(getCell(row, 1));
+            if (sheetCents != null && !sheetCents.equals(cents)) {
+                plan.mChanged.put(txid, sheetCents);
+            }
+        }
+
+        for (String txid : ledger.keySet()) {
+            if (!seen.contains(txid)) plan.mRemoved.add(txid);
+        }
+
+        Collections.reverse(plan.mDuplicateRows);
+        return plan;
+    }
+
+    /**
+     * A checksum over the given rows to notice when nothing changed since the last run
+     */
+    public static long hash(List<List<Object>> rows) {
+        // 64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (List<Object> row : rows) {
+            for (Object cell : row) {
+                String value = String.valueOf(cell);
+                for (int i = 0; i < value.length(); i++) {
+                    hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+                }
+                hash = (hash ^ '\t') * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Get a cell's value as trimmed string
+     */
+    private static String getCell(List<Object> row, int column) {
+        if (row == null || row.size() <= column || row.get(column) == null) return "";
+        return row.get(column).toString().trim();
+    }
+
+    /**
+     * Parse a spreadsheet amount
+     *
+     * @return the amount in cents or null if it's not a number
+     */
+    private static Long parseCents(String value) {
+        if (value.isEmpty()) return null;
+        try {
+            return new BigDecimal(value).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    // region Getters
+
+    public List<Integer> getDuplicateRows() {
+        return mDuplicateRows;
+    }
+
+    public List<String> getRemoved() {
+        return mRemoved;
+    }
+
+    public Map<String, Long> getChanged() {
+        return mChanged;
+    }
+
+    /**
+     * Check if the plan would remove a large share of the ledger
+     * <p>
+     * That's more likely reading the wrong or a cleared sheet than the user deleting rows
+     *
+     * @param ledgerSize the number of transactions the plan was made for
+     * @return true if the plan should not be applied
+     */
+    public boolean removesMost(int ledgerSize) {
+        int removed = mRemoved.size();
+        return removed > MAX_REMOVED_ALWAYS && removed > ledgerSize * MAX_REMOVED_SHARE;
+    }
+
+    /**
+     * @return true if nothing needs to be corrected
+     */
+    public boolean isEmpty() {
+        return mDuplicateRows.isEmpty() && mRemoved.isEmpty() && mChanged.isEmpty();
+    }
+
+    // endregion
+}
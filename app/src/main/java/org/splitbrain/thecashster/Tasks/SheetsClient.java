@@ -0,0 +1,122 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.google.api.client.extensions.android.http.AndroidHttp;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.SheetsScopes;
+
+import org.splitbrain.thecashster.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * Holds the Google Sheets client for the whole application
+ * <p>
+ * Transport, credential and service are created once and reused by all sync runs, so
+ * connections and auth tokens survive between them. The service is rebuilt when the
+ * selected account changes.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class SheetsClient {
+
+    // preference key to store which account to use for the spreadsheet API
+    private static final String PREF_ACCOUNT_NAME = "accountName";
+    // requested permissions for the spreadsheet API
+    private static final String[] SCOPES = {SheetsScopes.SPREADSHEETS};
+
+    private static SheetsClient sInstance;
+
+    private final Context mContext;
+    private final HttpTransport mTransport;
+    private final GoogleAccountCredential mCredential;
+    private Sheets mService = null;
+    private String mServiceAccount = null;
+
+    /**
+     * Access the single client instance
+     */
+    public static synchronized SheetsClient getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SheetsClient(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SheetsClient(Context context) {
+        mContext = context;
+        mTransport = AndroidHttp.newCompatibleTransport();
+        mCredential = GoogleAccountCredential.usingOAuth2(
+                context, Arrays.asList(SCOPES)
+        ).setBackOff(new ExponentialBackOff());
+
+        String accountName = getPreferences().getString(PREF_ACCOUNT_NAME, null);
+        if (accountName != null) {
+            mCredential.setSelectedAccountName(accountName);
+        }
+    }
+
+    /**
+     * The credential used for all requests
+     */
+    public GoogleAccountCredential getCredential() {
+        return mCredential;
+    }
+
+    /**
+     * The name of the currently used account, null if none has been selected
+     */
+    public String getAccountName() {
+        return mCredential.getSelectedAccountName();
+    }
+
+    /**
+     * Select and remember the account to use
+     */
+    public synchronized void setAccountName(String accountName) {
+        mCredential.setSelectedAccountName(accountName);
+        if (mCredential.getSelectedAccountName() == null) return; // no such account
+
+        getPreferences().edit()
+                .putString(PREF_ACCOUNT_NAME, accountName)
+                .apply();
+    }
+
+    /**
+     * Check if a service for the current account has already been built
+     */
+    public synchronized boolean hasService() {
+        return mService != null && mServiceAccount != null
+                && mServiceAccount.equals(mCredential.getSelectedAccountName());
+    }
+
+    /**
+     * Get the Sheets service for the current account
+     * <p>
+     * Should not be called from the main thread as building the service may take a while
+     */
+    public synchronized Sheets getService() {
+        if (!hasService()) {
+            long start = System.currentTimeMillis();
+            JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+            mService = new Sheets.Builder(mTransport, jsonFactory, mCredential)
+                    .setApplicationName("TheCashster")
+                    .build();
+            mServiceAccount = mCredential.getSelectedAccountName();
+            Metrics.time("sheets.client.build", System.currentTimeMillis() - start);
+        }
+        return mService;
+    }
+
+    private SharedPreferences getPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+}
@@ -1,34 +1,44 @@
 package org.splitbrain.thecashster.Tasks;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
-import com.google.api.client.extensions.android.http.AndroidHttp;
-import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.model.AppendValuesResponse;
 import com.google.api.services.sheets.v4.model.BatchUpdateSpreadsheetRequest;
+import com.google.api.services.sheets.v4.model.DeleteDimensionRequest;
+import com.google.api.services.sheets.v4.model.DimensionRange;
 import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.Sheet;
+import com.google.api.services.sheets.v4.model.SheetProperties;
 import com.google.api.services.sheets.v4.model.Spreadsheet;
 import com.google.api.services.sheets.v4.model.SpreadsheetProperties;
 import com.google.api.services.sheets.v4.model.UpdateSpreadsheetPropertiesRequest;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
 import org.splitbrain.thecashster.EntryActivity;
+import org.splitbrain.thecashster.Metrics;
 import org.splitbrain.thecashster.R;
+import org.splitbrain.thecashster.model.Ledger;
+import org.splitbrain.thecashster.model.Money;
+import org.splitbrain.thecashster.model.Place;
 import org.splitbrain.thecashster.model.Transaction;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import io.realm.Realm;
 import io.realm.RealmResults;
@@ -38,76 +48,544 @@ import io.realm.Sort;
  * @author Andreas Gohr andi@splitbrain.org
  */
 
-public class SheetsTask extends AsyncHandlerTask<Void, Void> {
+public class SheetsTask extends AsyncHandlerTask<Void> {
     // for logging
     private final String TAG = this.getClass().getSimpleName();
     // the preference that holds our google sheets document ID
     public static final String PREF_SHEET_ID = "sheetID";
-
-    private com.google.api.services.sheets.v4.Sheets mService = null;
+    // the preference that holds when the last sync succeeded
+    public static final String PREF_SYNC_SUCCESS = "syncSuccess";
+    // the preference that holds how many syncs failed in a row
+    public static final String PREF_SYNC_RETRIES = "syncRetries";
+    // the preference that holds when we last made sure the document exists
+    private static final String PREF_SHEET_VERIFIED = "sheetVerified";
+    // how long a document check stays valid
+    private static final long VERIFY_TTL = 24 * 60 * 60 * 1000;
+    // the approximate maximum size of the JSON rows sent in one append request
+    private static final int CHUNK_BYTES = 64 * 1024;
+    // the number of columns in a transaction row
+    private static final int ROW_CELLS = 9;
+    // the preferences that hold the ID and title of the sheet (tab) within our document
+    private static final String PREF_SHEET_GID = "sheetGID";
+    private static final String PREF_SHEET_TITLE = "sheetTitle";
+    // the preferences that hold when and with what result we last reconciled
+    private static final String PREF_RECONCILED = "sheetReconciled";
+    private static final String PREF_RECONCILED_HASH = "sheetReconciledHash";
+    // how often to compare the spreadsheet with the local ledger
+    private static final long RECONCILE_INTERVAL = 6 * 60 * 60 * 1000;
+    // the preferences that hold the last acknowledged transaction and its row
+    private static final String PREF_WATERMARK_TXID = "sheetWatermarkTxid";
+    private static final String PREF_WATERMARK_ROW = "sheetWatermarkRow";
+
+    private final SheetsClient mClient;
+    private Sheets mService = null;
     private Exception mLastError = null;
-    private WeakReference<EntryActivity> mContextRef;
+    private String mDocId = null;
+    // the sheet (tab) all ranges and structural changes refer to
+    private SheetProperties mSheet = null;
+    private final Context mContext;
+    private WeakReference<EntryActivity> mActivityRef = new WeakReference<>(null);
+    // reused for all rows, the task runs on a single thread
+    private final SimpleDateFormat mDateFormat =
+            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
 
     /**
      * Constructor
+     *
+     * @param context any context, only the application context is kept
      */
-    public SheetsTask(EntryActivity act, GoogleAccountCredential credential) {
-        mContextRef = new WeakReference<>(act);
-        HttpTransport transport = AndroidHttp.newCompatibleTransport();
-        JsonFactory jsonFactory = JacksonFactory.getDefaultInstance();
+    public SheetsTask(Context context) {
+        mContext = context.getApplicationContext();
+        mClient = SheetsClient.getInstance(mContext);
+    }
 
-        mService = new com.google.api.services.sheets.v4.Sheets.Builder(
-                transport, jsonFactory, credential)
-                .setApplicationName("TheCashster")
-                .build();
+    /**
+     * Set the activity to use for resolving authorization problems
+     * <p>
+     * Without it, those problems can't be solved and the sync fails like on any other error
+     */
+    public void setActivity(@Nullable EntryActivity act) {
+        mActivityRef = new WeakReference<>(act);
     }
 
     /**
      * Do the work
+     * <p>
+     * The duration is recorded separately for runs that had to set up the client first (cold)
+     * and those reusing an existing one (warm)
      */
     @Override
     protected SheetsTask doInBackground(Void... voids) {
+        long start = System.currentTimeMillis();
+        boolean cold = !mClient.hasService();
         try {
-            String docId = getOrCreateDocument();
-            transferTransactions(docId);
+            mService = mClient.getService();
+            mDocId = getOrCreateDocument();
+            loadSheet();
+            transferTransactions();
+            reconcile();
+            recordResult(true);
         } catch (IOException e) {
             mLastError = e;
             cancel(true);
+        } finally {
+            Metrics.time(cold ? "sync.cold" : "sync.warm", System.currentTimeMillis() - start);
         }
         return this;
     }
 
     /**
-     * Transfers all pending transactions and deletes them locally
+     * Transfers all pending transactions in chunks
+     * <p>
+     * Chunks are limited by their approximate size rather than the number of rows, so a long
+     * offline backlog neither needs to be held in memory at once nor ends up in one huge request.
+     * <p>
+     * Each chunk is marked as in flight before it is sent. Only when the spreadsheet confirmed
+     * the append are the transactions acknowledged and the watermark is moved to the last
+     * of them. When the request was rejected, the chunk is put back into the pending state to
+     * be retried on the next run. When we don't know if the append happened (eg. a timeout)
+     * the chunk stays in flight and is checked against the spreadsheet on the next run.
      *
-     * @param docId The ID of the spreadsheet
      * @throws IOException when something goes wrong
      */
-    private void transferTransactions(String docId) throws IOException {
+    private void transferTransactions() throws IOException {
         Realm realm = Realm.getDefaultInstance();
+        try {
+            // anything still in flight was left behind by an aborted run
+            resolveInflight(realm);
+
+            while (true) {
+                List<String> txids = new ArrayList<>();
+                List<List<Object>> values = new ArrayList<>();
+                int bytes = 0;
+
+                realm.beginTransaction();
+                RealmResults<Transaction> transactions = realm.where(Transaction.class)
+                        .equalTo("state", Transaction.STATE_PENDING)
+                        .findAllSorted("dt", Sort.ASCENDING);
+                for (Transaction tx : transactions) {
+                    List<Object> row = getRow(tx);
+                    int size = getSize(row);
+                    if (!txids.isEmpty() && bytes + size > CHUNK_BYTES) break;
+                    bytes += size;
+                    values.add(row);
+                    txids.add(tx.getTxid());
+                    tx.setState(Transaction.STATE_INFLIGHT);
+                }
+                realm.commitTransaction();
+                if (txids.isEmpty()) break;
+                Metrics.add("sync.chunk.estimate", bytes);
+
+                long start = System.currentTimeMillis();
+                AppendValuesResponse response;
+                try {
+                    response = appendToDocument(values);
+                } catch (GoogleJsonResponseException e) {
+                    // a 4xx answer means the append was not done
+                    if (e.getStatusCode() >= 400 && e.getStatusCode() < 500) {
+                        updateState(realm, txids, Transaction.STATE_PENDING);
+                    }
+                    throw e;
+                }
+                Log.d(TAG, "appended " + txids.size() + " rows in "
+                        + (System.currentTimeMillis() - start) + "ms");
+
+                Integer updated = response.getUpdates() == null ?
+                        null : response.getUpdates().getUpdatedRows();
+                if (updated == null || updated != txids.size()) {
+                    // we don't know what made it into the sheet, keep the chunk in flight
+                    throw new IOException("Append confirmed " + updated + " of "
+                            + txids.size() + " rows");
+                }
+                acknowledge(realm, txids);
+                setWatermark(txids.get(txids.size() - 1),
+                        InflightResolver.getEndRow(response.getUpdates().getUpdatedRange()));
+            }
+        } finally {
+            realm.close();
+        }
+    }
+
+    /**
+     * Create the spreadsheet row for the given transaction
+     * <p>
+     * Amount and date are sent as text, the spreadsheet parses them itself. Transactions whose
+     * place was deleted get empty place cells.
+     */
+    private List<Object> getRow(Transaction tx) {
+        List<Object> row = new ArrayList<>(ROW_CELLS);
+        row.add(tx.getTxid());
+        row.add(Money.format(tx.getCents()));
+        row.add(mDateFormat.format(tx.getDt()));
+
+        Place place = tx.getPlace();
+        if (place == null) {
+            while (row.size() < ROW_CELLS) row.add("");
+            return row;
+        }
+        row.add(place.getName());
+        row.add(place.getAddress());
+        row.add(place.getCategory());
+        row.add(place.getFoursquare());
+        row.add(place.getLat());
+        row.add(place.getLon());
+        return row;
+    }
+
+    /**
+     * Estimate how many bytes the given row adds to the JSON request body
+     * <p>
+     * Counts the UTF-8 encoded cells plus quotes, escapes and separators. It is only used to
+     * limit the size of each chunk, compression by the API client is not taken into account.
+     */
+    private static int getSize(List<Object> row) {
+        int size = 3;
+        for (Object cell : row) {
+            String value = String.valueOf(cell);
+            size += 3;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    size += 2;
+                } else if (c < 0x20) {
+                    size += 6; // escaped as six characters
+                } else if (c < 0x80) {
+                    size += 1;
+                } else if (c < 0x800 || Character.isSurrogate(c)) {
+                    size += 2; // a surrogate pair takes 4 bytes
+                } else {
+                    size += 3;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Find out which transactions left in flight made it into the spreadsheet
+     * <p>
+     * Appends always go to the end of the spreadsheet, so only the rows after the watermark
+     * need to be checked. Transactions found there are acknowledged, all others are sent again.
+     * When the document is gone, all of them are sent again to a new one.
+     *
+     * @throws IOException when something goes wrong
+     */
+    private void resolveInflight(Realm realm) throws IOException {
+        List<String> inflight = new ArrayList<>();
+        for (Transaction tx : realm.where(Transaction.class)
+                .equalTo("state", Transaction.STATE_INFLIGHT)
+                .findAll()) {
+            inflight.add(tx.getTxid());
+        }
+        if (inflight.isEmpty()) return;
+
+        List<List<Object>> tail;
+        try {
+            tail = readTail();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            replaceDocument();
+            tail = Collections.emptyList();
+        }
+        InflightResolver result = InflightResolver.resolve(inflight, tail);
+        List<String> acked = result.getAcked();
+        List<String> pending = result.getPending();
+        if (!acked.isEmpty()) acknowledge(realm, acked);
+        if (!pending.isEmpty()) updateState(realm, pending, Transaction.STATE_PENDING);
+
+        Metrics.add("sync.inflight.acked", acked.size());
+        Metrics.add("sync.inflight.resent", pending.size());
+    }
+
+    /**
+     * Read the TX IDs from the watermark to the end of the spreadsheet
+     * <p>
+     * The watermark row is included to make sure it still holds the watermark transaction.
+     * If rows were deleted above it, the whole column is read instead.
+     *
+     * @throws IOException when something goes wrong
+     */
+    private List<List<Object>> readTail() throws IOException {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        int row = preferences.getInt(PREF_WATERMARK_ROW, 0);
+        String txid = preferences.getString(PREF_WATERMARK_TXID, null);
+
+        List<List<Object>> rows = null;
+        if (row > 0 && txid != null) {
+            rows = readColumn(getRange("A" + row + ":A"));
+            if (!InflightResolver.startsWith(rows, txid)) {
+                Metrics.count("sync.watermark.moved");
+                rows = null;
+            }
+        }
+        if (rows == null) rows = readColumn(getRange("A:A"));
+        return rows;
+    }
+
+    /**
+     * Read the given range of the first column
+     *
+     * @param range the range qualified with the sheet's title
+     *
+     * @throws IOException when something goes wrong
+     */
+    private List<List<Object>> readColumn(String range) throws IOException {
+        List<List<Object>> rows = mService.spreadsheets().values().get(mDocId, range)
+                .execute()
+                .getValues();
+        if (rows == null) return Collections.emptyList();
+        return rows;
+    }
+
+    /**
+     * Remember the last acknowledged transaction and its row
+     * <p>
+     * Uses commit() instead of apply() since a lost watermark means reading the whole column
+     */
+    @SuppressLint("ApplySharedPref")
+    private void setWatermark(String txid, int row) {
+        if (row <= 0) return;
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(PREF_WATERMARK_TXID, txid)
+                .putInt(PREF_WATERMARK_ROW, row)
+                .commit();
+    }
+
+    /**
+     * Set the state of the given transactions
+     */
+    private void updateState(Realm realm, List<String> txids, int to) {
         realm.beginTransaction();
+        RealmResults<Transaction> transactions = realm.where(Transaction.class)
+                .in("txid", txids.toArray(new String[txids.size()]))
+                .findAll();
+        for (Transaction tx : transactions) {
+            tx.setState(to);
+        }
+        realm.commitTransaction();
+    }
 
+    /**
+     * Mark the given transactions as acknowledged by the spreadsheet
+     * <p>
+     * Acknowledged transactions stay in the local ledger
+     */
+    private void acknowledge(Realm realm, List<String> txids) {
+        realm.beginTransaction();
         RealmResults<Transaction> transactions = realm.where(Transaction.class)
-                .findAllSorted("dt", Sort.ASCENDING);
-        List<List<Object>> values = new ArrayList<>();
+                .in("txid", txids.toArray(new String[txids.size()]))
+                .findAll();
         for (Transaction tx : transactions) {
-            List<Object> row = new ArrayList<>();
-            row.add(tx.getTxid());
-            row.add(tx.getAmount());
-            row.add(android.text.format.DateFormat.format("yyyy-MM-dd hh:mm:ss", tx.getDt()));
-            row.add(tx.getPlace().getName());
-            row.add(tx.getPlace().getAddress());
-            row.add(tx.getPlace().getCategory());
-            row.add(tx.getPlace().getFoursquare());
-            row.add(tx.getPlace().getLat());
-            row.add(tx.getPlace().getLon());
-            values.add(row);
-        }
-        transactions.deleteAllFromRealm();
+            tx.setState(Transaction.STATE_ACKED);
+            tx.setSheet(mDocId);
+        }
+        realm.commitTransaction();
+    }
+
+    /**
+     * Bring the spreadsheet and the local ledger in line
+     * <p>
+     * Only the TX ID and amount columns are read. When they did not change since the last run
+     * there is nothing to do. Otherwise duplicate rows are deleted from the spreadsheet in one
+     * request and rows deleted or edited by the user are applied to the ledger. This is only
+     * done every few hours. When the document is gone, a new one is created and there is
+     * nothing to reconcile.
+     * <p>
+     * A plan removing most of the ledger rather means we read the wrong rows, eg. because the
+     * sheet was cleared or replaced. It is not applied and checked again next time.
+     *
+     * @throws IOException when something goes wrong
+     */
+    private void reconcile() throws IOException {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        long now = System.currentTimeMillis();
+        if (now - preferences.getLong(PREF_RECONCILED, 0) < RECONCILE_INTERVAL) return;
+
+        ValueRange range;
+        try {
+            range = mService.spreadsheets().values().get(mDocId, getRange("A:B"))
+                    .setValueRenderOption("UNFORMATTED_VALUE")
+                    .execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            replaceDocument();
+            return;
+        }
+        List<List<Object>> rows = range.getValues();
+        if (rows == null) rows = Collections.emptyList();
+
+        long hash = SheetReconciler.hash(rows);
+        if (!preferences.contains(PREF_RECONCILED_HASH)
+                || hash != preferences.getLong(PREF_RECONCILED_HASH, 0)) {
+            Realm realm = Realm.getDefaultInstance();
+            try {
+                Map<String, Long> ledger = new HashMap<>();
+                RealmResults<Transaction> transactions = realm.where(Transaction.class)
+                        .equalTo("state", Transaction.STATE_ACKED)
+                        .equalTo("sheet", mDocId)
+                        .findAll();
+                for (Transaction tx : transactions) {
+                    ledger.put(tx.getTxid(), tx.getCents());
+                }
+
+                SheetReconciler plan = SheetReconciler.plan(rows, ledger);
+                if (plan.removesMost(ledger.size())) {
+                    Log.e(TAG, "Refusing to remove " + plan.getRemoved().size() + " of "
+                            + ledger.size() + " transactions");
+                    Metrics.count("reconcile.refused");
+                    preferences.edit().putLong(PREF_RECONCILED, now).apply();
+                    return;
+                }
+                if (!plan.getDuplicateRows().isEmpty()) deleteRows(plan.getDuplicateRows());
+                applyToLedger(realm, plan);
+
+                Metrics.add("reconcile.duplicates", plan.getDuplicateRows().size());
+                Metrics.add("reconcile.removed", plan.getRemoved().size());
+                Metrics.add("reconcile.changed", plan.getChanged().size());
+            } finally {
+                realm.close();
+            }
+        }
+        Metrics.count("reconcile.runs");
+
+        preferences.edit()
+                .putLong(PREF_RECONCILED, now)
+                .putLong(PREF_RECONCILED_HASH, hash)
+                .apply();
+    }
+
+    /**
+     * Apply the changes made in the spreadsheet to the local ledger
+     */
+    private void applyToLedger(Realm realm, SheetReconciler plan) {
+        if (plan.getRemoved().isEmpty() && plan.getChanged().isEmpty()) return;
+
+        realm.beginTransaction();
+        for (String txid : plan.getRemoved()) {
+            Transaction tx = realm.where(Transaction.class).equalTo("txid", txid).findFirst();
+            if (tx == null) continue;
+            Ledger.remove(realm, tx);
+            tx.setState(Transaction.STATE_REMOVED);
+        }
+        for (Map.Entry<String, Long> entry : plan.getChanged().entrySet()) {
+            Transaction tx = realm.where(Transaction.class)
+                    .equalTo("txid", entry.getKey())
+                    .findFirst();
+            if (tx == null) continue;
+            Ledger.change(realm, tx, entry.getValue());
+        }
         realm.commitTransaction();
-        realm.close();
+    }
+
+    /**
+     * Delete the given rows from the spreadsheet in one request
+     *
+     * @param rows zero based row indexes, last row first so earlier deletions don't shift
+     *             the later ones
+     * @throws IOException when something goes wrong
+     */
+    private void deleteRows(List<Integer> rows) throws IOException {
+        int sheetId = mSheet.getSheetId();
+        List<Request> requests = new ArrayList<>();
+        for (int row : rows) {
+            requests.add(new Request().setDeleteDimension(new DeleteDimensionRequest()
+                    .setRange(new DimensionRange()
+                            .setSheetId(sheetId)
+                            .setDimension("ROWS")
+                            .setStartIndex(row)
+                            .setEndIndex(row + 1))));
+        }
+        BatchUpdateSpreadsheetRequest body =
+                new BatchUpdateSpreadsheetRequest().setRequests(requests);
+        mService.spreadsheets().batchUpdate(mDocId, body).execute();
+    }
+
+    /**
+     * Load the sheet (tab) we sync with
+     * <p>
+     * Its ID and title are stored together, so ranges qualified with the title and structural
+     * changes using the ID always refer to the same tab, no matter which tab the user moved to
+     * the front. Documents from before the title was stored use their first sheet, that's
+     * where the unqualified ranges went.
+     *
+     * @throws IOException when something goes wrong
+     */
+    private void loadSheet() throws IOException {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String title = preferences.getString(PREF_SHEET_TITLE, null);
+        if (title != null && preferences.contains(PREF_SHEET_GID)) {
+            mSheet = new SheetProperties()
+                    .setSheetId(preferences.getInt(PREF_SHEET_GID, 0))
+                    .setTitle(title);
+            return;
+        }
+
+        Spreadsheet doc;
+        try {
+            doc = mService.spreadsheets().get(mDocId)
+                    .setFields("sheets.properties(sheetId,title)")
+                    .execute();
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            replaceDocument();
+            return;
+        }
+        SheetProperties sheet = findSheet(doc, title);
+        if (sheet == null) throw new IOException("Sheet '" + title + "' not found");
+        setSheet(sheet);
+    }
+
+    /**
+     * Find a sheet (tab) by its title
+     *
+     * @param title the title to look for, null for the first sheet
+     * @return the sheet's properties or null if there is no such sheet
+     */
+    @Nullable
+    private static SheetProperties findSheet(Spreadsheet doc, @Nullable String title) {
+        if (doc.getSheets() == null) return null;
+        for (Sheet sheet : doc.getSheets()) {
+            if (title == null || title.equals(sheet.getProperties().getTitle())) {
+                return sheet.getProperties();
+            }
+        }
+        return null;
+    }
 
-        append(docId, values);
+    /**
+     * Find a sheet (tab) by its ID
+     *
+     * @return the sheet's properties or null if there is no such sheet
+     */
+    @Nullable
+    private static SheetProperties findSheet(Spreadsheet doc, int sheetId) {
+        if (doc.getSheets() == null) return null;
+        for (Sheet sheet : doc.getSheets()) {
+            Integer id = sheet.getProperties().getSheetId();
+            if (id != null && id == sheetId) return sheet.getProperties();
+        }
+        return null;
+    }
+
+    /**
+     * Use and remember the given sheet (tab)
+     */
+    private void setSheet(SheetProperties sheet) {
+        mSheet = sheet;
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putInt(PREF_SHEET_GID, sheet.getSheetId())
+                .putString(PREF_SHEET_TITLE, sheet.getTitle())
+                .apply();
+    }
+
+    /**
+     * Qualify the given range with the title of our sheet (tab)
+     *
+     * @param range a range in A1 notation without sheet, eg. A:B
+     * @return the range in A1 notation, eg. 'Sheet 1'!A:B
+     */
+    private String getRange(String range) {
+        return "'" + mSheet.getTitle().replace("'", "''") + "'!" + range;
     }
 
     /**
@@ -133,24 +611,56 @@ public class SheetsTask extends AsyncHandlerTask<Void, Void> {
         return values;
     }
 
+    /**
+     * Append data to our spreadsheet, recreating it if it went missing
+     * <p>
+     * The document is not checked before each sync, instead a 404 on the append (or any
+     * earlier read) tells us that it has been deleted.
+     *
+     * @param values two-dimensional array of cells to append
+     * @return the response describing the updated range
+     * @throws IOException when something goes wrong
+     */
+    private AppendValuesResponse appendToDocument(List<List<Object>> values) throws IOException {
+        try {
+            return append(mDocId, getRange("A1:B1"), values);
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() != 404) throw e;
+            replaceDocument();
+            return append(mDocId, getRange("A1:B1"), values);
+        }
+    }
+
+    /**
+     * Switch to a new document after the known one returned a 404
+     *
+     * @throws IOException when something goes wrong
+     */
+    private void replaceDocument() throws IOException {
+        Log.e(TAG, "Known doc is not accessible, we forget about it");
+        Metrics.count("sync.doc.replaced");
+        forgetDocument();
+        mDocId = getOrCreateDocument();
+    }
+
     /**
      * Append data to the spreadsheet
      *
      * @param docId  the document ID
+     * @param range  the range qualified with the sheet's title
      * @param values two-dimensional array of cells to append
+     * @return the response describing the updated range
      * @throws IOException when something goes wrong
      */
-    private void append(String docId, List<List<Object>> values) throws IOException {
-        String range = "A1:B1";
-
+    private AppendValuesResponse append(String docId, String range, List<List<Object>> values)
+            throws IOException {
         ValueRange requestBody = new ValueRange();
         requestBody.setValues(values);
 
         Sheets.Spreadsheets.Values.Append request =
                 mService.spreadsheets().values().append(docId, range, requestBody).setValueInputOption("USER_ENTERED");
 
-        AppendValuesResponse response = request.execute();
-        System.out.println(response);
+        return request.execute();
     }
 
     /**
@@ -158,22 +668,34 @@ public class SheetsTask extends AsyncHandlerTask<Void, Void> {
      * <p>
      * On first time use this will create a new Document, set the title and add headers.
      * Subsequent uses will pull the document ID from the preferences and just check that the
-     * doc hasn't been deleted
+     * doc hasn't been deleted and our sheet's title is up to date. That check is only repeated
+     * once a day, a vanished document is also detected when appending to it.
      *
      * @return the documentID of our spreadsheet
      * @throws IOException when something goes wrong
      */
     private String getOrCreateDocument() throws IOException {
-        Context context = mContextRef.get();
-        if (context == null) throw new IOException("no context available");
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        String sheetTitle = context.getString(R.string.app_name);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String sheetTitle = mContext.getString(R.string.app_name);
 
-        // get doc from preferences and check it still exists
+        // get doc from preferences and check it still exists unless we did so recently
         String docID = preferences.getString(PREF_SHEET_ID, null);
         if (docID != null) {
+            long verified = preferences.getLong(PREF_SHEET_VERIFIED, 0);
+            if (System.currentTimeMillis() - verified < VERIFY_TTL) {
+                return docID;
+            }
+
             try {
-                mService.spreadsheets().get(docID).execute();
+                Spreadsheet doc = mService.spreadsheets().get(docID)
+                        .setFields("sheets.properties(sheetId,title)")
+                        .execute();
+                SharedPreferences.Editor editor = preferences.edit();
+                editor.putLong(PREF_SHEET_VERIFIED, System.currentTimeMillis());
+                // follow our sheet when the user renamed it
+                SheetProperties sheet = findSheet(doc, preferences.getInt(PREF_SHEET_GID, -1));
+                if (sheet != null) editor.putString(PREF_SHEET_TITLE, sheet.getTitle());
+                editor.apply();
                 return docID;
             } catch (GoogleJsonResponseException e) {
                 if (e.getStatusCode() == 404) {
@@ -216,32 +738,83 @@ public class SheetsTask extends AsyncHandlerTask<Void, Void> {
                 new BatchUpdateSpreadsheetRequest().setRequests(requests);
         mService.spreadsheets().batchUpdate(doc.getSpreadsheetId(), body).execute();
 
+        // a new document has exactly one sheet, that's the one we use
+        mSheet = doc.getSheets().get(0).getProperties();
+
         // add header line
-        append(doc.getSpreadsheetId(), getHeaders());
+        append(doc.getSpreadsheetId(), getRange("A1:B1"), getHeaders());
 
-        // remember doc ID in preferences
+        // remember doc and sheet in preferences
         SharedPreferences.Editor editor = preferences.edit();
         editor.putString(PREF_SHEET_ID, doc.getSpreadsheetId());
+        editor.putLong(PREF_SHEET_VERIFIED, System.currentTimeMillis());
+        editor.putInt(PREF_SHEET_GID, mSheet.getSheetId());
+        editor.putString(PREF_SHEET_TITLE, mSheet.getTitle());
+        editor.remove(PREF_RECONCILED);
+        editor.remove(PREF_RECONCILED_HASH);
+        editor.remove(PREF_WATERMARK_TXID);
+        editor.remove(PREF_WATERMARK_ROW);
         editor.apply();
 
         return doc.getSpreadsheetId();
     }
 
+    /**
+     * Remove the stored document ID so a new document is created on the next call
+     * to getOrCreateDocument()
+     */
+    private void forgetDocument() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .remove(PREF_SHEET_ID)
+                .remove(PREF_SHEET_VERIFIED)
+                .remove(PREF_SHEET_GID)
+                .remove(PREF_SHEET_TITLE)
+                .remove(PREF_RECONCILED)
+                .remove(PREF_RECONCILED_HASH)
+                .remove(PREF_WATERMARK_TXID)
+                .remove(PREF_WATERMARK_ROW)
+                .apply();
+    }
+
+    /**
+     * Remember the outcome of this run
+     * <p>
+     * Failures are counted until the next success, the count determines when to retry.
+     * Successes are recorded at the end of doInBackground(), failures in onCancelled() so
+     * crashes and rejected runs are counted, too.
+     */
+    private void recordResult(boolean success) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        if (success) {
+            preferences.edit()
+                    .putLong(PREF_SYNC_SUCCESS, System.currentTimeMillis())
+                    .putInt(PREF_SYNC_RETRIES, 0)
+                    .apply();
+        } else {
+            preferences.edit()
+                    .putInt(PREF_SYNC_RETRIES, preferences.getInt(PREF_SYNC_RETRIES, 0) + 1)
+                    .apply();
+        }
+    }
+
 
     /**
      * Handle the cancellation of the task
      * <p>
-     * This happens when any exception is thrown. Ususally we can't do anything in that
-     * case and just silently ignore the error and hope it will work next time.
+     * This happens when any exception is thrown or the run was rejected by a full pool, it
+     * is counted as failed run either way. Ususally we can't do anything in that case and
+     * just silently ignore the error and hope it will work next time.
      * However we do handle missing authorization here by opening a dialog about it and
-     * having the result passed back to our EntryActivity. Once proper auth is available,
-     * the task will be restarted again.
+     * having the result passed back to our EntryActivity, if one was set. Once proper auth is
+     * available, the task will be restarted again.
      */
     @Override
     protected void onCancelled() {
+        recordResult(false);
+
         if (mLastError != null) {
             if (mLastError instanceof UserRecoverableAuthIOException) {
-                EntryActivity context = mContextRef.get();
+                EntryActivity context = mActivityRef.get();
                 if (context != null) {
                     context.startActivityForResult(
                             ((UserRecoverableAuthIOException) mLastError).getIntent(),
@@ -250,6 +823,6 @@ public class SheetsTask extends AsyncHandlerTask<Void, Void> {
             }
         }
 
-        Log.e(TAG, "task was cancelled", mLastError);
+        Log.e(TAG, "task was cancelled", mLastError != null ? mLastError : getCrash());
     }
 }
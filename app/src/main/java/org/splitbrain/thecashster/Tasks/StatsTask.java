@@ -0,0 +1,80 @@
+package org.splitbrain.thecashster.Tasks;
+
+import org.splitbrain.thecashster.model.Ledger;
+import org.splitbrain.thecashster.model.Place;
+import org.splitbrain.thecashster.model.Transaction;
+
+import java.util.Date;
+
+import io.realm.Realm;
+
+/**
+ * Count the locally stored data in the background
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class StatsTask extends AsyncHandlerTask<Void> {
+
+    private long mPlaces = 0;
+    private long mPendingTransactions = 0;
+    private long mToday = 0;
+    private long mWeek = 0;
+    private long mMonth = 0;
+
+    /**
+     * Shown while the user waits
+     */
+    @Override
+    protected int getPriority() {
+        return TaskExecutor.PRIORITY_INTERACTIVE;
+    }
+
+    @Override
+    protected StatsTask doInBackground(Void... voids) {
+        Realm realm = Realm.getDefaultInstance();
+        try {
+            mPlaces = realm.where(Place.class).count();
+            // pending and in flight
+            mPendingTransactions = realm.where(Transaction.class)
+                    .lessThan("state", Transaction.STATE_ACKED)
+                    .count();
+
+            Date now = new Date();
+            mToday = Ledger.getCents(realm, Ledger.dayKey(now));
+            mWeek = Ledger.getCents(realm, Ledger.weekKey(now));
+            mMonth = Ledger.getCents(realm, Ledger.monthKey(now));
+        } finally {
+            realm.close();
+        }
+        return this;
+    }
+
+    public long getPlaces() {
+        return mPlaces;
+    }
+
+    public long getPendingTransactions() {
+        return mPendingTransactions;
+    }
+
+    /**
+     * @return the amount spent today in cents
+     */
+    public long getToday() {
+        return mToday;
+    }
+
+    /**
+     * @return the amount spent this week in cents
+     */
+    public long getWeek() {
+        return mWeek;
+    }
+
+    /**
+     * @return the amount spent this month in cents
+     */
+    public long getMonth() {
+        return mMonth;
+    }
+}
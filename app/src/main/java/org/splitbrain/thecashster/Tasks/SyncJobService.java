@@ -0,0 +1,107 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import org.splitbrain.thecashster.Metrics;
+
+import java.util.Random;
+
+/**
+ * Transfers pending transactions in the background once a network is available
+ * <p>
+ * The job is persisted, so transactions get synced even when the app is no longer running.
+ * Failed syncs schedule it again with an exponentially growing, jittered delay based on the
+ * number of failures in a row.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class SyncJobService extends JobService {
+
+    private static final int JOB_ID = 1;
+    // delay of the first retry
+    private static final long BACKOFF_BASE = 30 * 1000;
+    // the delay never grows beyond this
+    private static final long BACKOFF_MAX = 6 * 60 * 60 * 1000;
+
+    private static final Random sRandom = new Random();
+
+    /**
+     * Run the sync, the job is finished when the sync is
+     */
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        Metrics.count("sync.job.started");
+        SyncScheduler.getInstance().runNow(this, new Runnable() {
+            @Override
+            public void run() {
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * The sync can't be interrupted, failures schedule their own retry
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Metrics.count("sync.job.stopped");
+        return false;
+    }
+
+    /**
+     * Schedule the job to run once a network is available
+     *
+     * @param context any context
+     * @param delay   minimum milliseconds to wait before running
+     */
+    public static void schedule(Context context, long delay) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return;
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, SyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(delay)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Schedule the job to retry after a failed sync
+     * <p>
+     * The delay doubles with each failure in a row and is randomized by ±50% to avoid
+     * retrying in lockstep with other failing requests
+     *
+     * @param context any context
+     */
+    public static void scheduleRetry(Context context) {
+        int retries = PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(SheetsTask.PREF_SYNC_RETRIES, 1);
+        long delay = BACKOFF_BASE << Math.min(Math.max(retries - 1, 0), 16);
+        delay = Math.min(delay, BACKOFF_MAX);
+        delay = delay / 2 + (long) (sRandom.nextDouble() * delay);
+
+        Metrics.count("sync.job.retries");
+        schedule(context, delay);
+    }
+
+    /**
+     * Remove the scheduled job
+     *
+     * @param context any context
+     */
+    public static void cancel(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler != null) scheduler.cancel(JOB_ID);
+    }
+}
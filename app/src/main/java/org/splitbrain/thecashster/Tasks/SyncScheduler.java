@@ -0,0 +1,164 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.splitbrain.thecashster.EntryActivity;
+import org.splitbrain.thecashster.Metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schedules the transfer of transactions to Google Sheets
+ * <p>
+ * Sync requests are debounced and merged, so saving several expenses in a row results in a
+ * single SheetsTask. While a task is running, further requests queue at most one follow-up
+ * run which will pick up everything that was stored in the meantime.
+ * <p>
+ * Each request also schedules the SyncJobService as a safety net in case the app goes away
+ * before the sync is done. Successful syncs remove that job again, failed ones reschedule it
+ * with a backoff. The job itself runs its sync through this scheduler, too, so there is never
+ * more than one sync running.
+ * <p>
+ * All methods have to be called from the main thread.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class SyncScheduler implements
+        AsyncHandlerTask.OnTaskCompleted,
+        AsyncHandlerTask.OnTaskCancelled {
+
+    // how long to wait for more requests before starting a sync
+    private static final long DEBOUNCE_MS = 2000;
+    // when the background job should take over if the requested sync didn't finish
+    private static final long JOB_DELAY_MS = 15 * 60 * 1000;
+
+    private static SyncScheduler sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Context mContext;
+    private WeakReference<EntryActivity> mActivityRef = new WeakReference<>(null);
+    // called when the running sync is done
+    private final List<Runnable> mWaiting = new ArrayList<>();
+    private SheetsTask mRunning = null;
+    private boolean mScheduled = false;
+    private boolean mQueued = false;
+
+    private final Runnable mStarter = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            start();
+        }
+    };
+
+    /**
+     * Access the single scheduler instance
+     */
+    public static SyncScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler();
+        }
+        return sInstance;
+    }
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Request a sync
+     *
+     * @param act the activity used to resolve authorization problems
+     */
+    public void requestSync(EntryActivity act) {
+        Metrics.count("sync.requested");
+        mContext = act.getApplicationContext();
+        mActivityRef = new WeakReference<>(act);
+        SyncJobService.schedule(mContext, JOB_DELAY_MS);
+
+        if (mRunning != null) {
+            if (mQueued) Metrics.count("sync.coalesced");
+            mQueued = true;
+            return;
+        }
+
+        if (mScheduled) {
+            Metrics.count("sync.coalesced");
+            mHandler.removeCallbacks(mStarter);
+        }
+        mScheduled = true;
+        mHandler.postDelayed(mStarter, DEBOUNCE_MS);
+    }
+
+    /**
+     * Run a sync right away without an activity
+     * <p>
+     * When a sync is already running, no new one is started but the callback waits for it
+     *
+     * @param context any context
+     * @param done    called when the sync is done
+     */
+    void runNow(Context context, Runnable done) {
+        Metrics.count("sync.requested");
+        mContext = context.getApplicationContext();
+        mWaiting.add(done);
+        if (mRunning != null) return;
+
+        if (mScheduled) {
+            mScheduled = false;
+            mHandler.removeCallbacks(mStarter);
+        }
+        start();
+    }
+
+    /**
+     * Start a new sync task
+     */
+    private void start() {
+        Metrics.count("sync.runs");
+        mRunning = new SheetsTask(mContext);
+        mRunning.setActivity(mActivityRef.get());
+        mRunning.setOnTaskCompleted(this);
+        mRunning.setOnTaskCancelled(this);
+        mRunning.execute();
+    }
+
+    /**
+     * Schedule the background job and start the queued follow-up run if any
+     *
+     * @param success did the sync work?
+     */
+    private void finished(boolean success) {
+        mRunning = null;
+
+        // let a waiting job finish first, so rescheduling doesn't stop it
+        for (Runnable done : mWaiting) {
+            done.run();
+        }
+        mWaiting.clear();
+
+        if (success) {
+            SyncJobService.cancel(mContext);
+        } else {
+            SyncJobService.scheduleRetry(mContext);
+        }
+
+        if (mQueued) {
+            mQueued = false;
+            start();
+        }
+    }
+
+    @Override
+    public void onTaskCompleted(AsyncHandlerTask task) {
+        finished(true);
+    }
+
+    @Override
+    public void onTaskCancelled(AsyncHandlerTask task) {
+        finished(false);
+    }
+}
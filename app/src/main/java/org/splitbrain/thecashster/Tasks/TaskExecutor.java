@@ -0,0 +1,104 @@
+package org.splitbrain.thecashster.Tasks;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools for our AsyncHandlerTasks
+ * <p>
+ * Interactive work the user is waiting for (like local place searches), network requests
+ * the user is waiting for (like Foursquare searches) and background work (like syncing) run in
+ * separate pools, so a slow upload never delays a search and a hanging request never delays
+ * a database query. All pools have bounded queues.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class TaskExecutor {
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+    public static final int PRIORITY_NETWORK = 2;
+
+    private static final ThreadPoolExecutor sInteractive =
+            createPool("interactive", 2, 8, Process.THREAD_PRIORITY_DEFAULT);
+    private static final ThreadPoolExecutor sBackground =
+            createPool("background", 1, 16, Process.THREAD_PRIORITY_BACKGROUND);
+    private static final ThreadPoolExecutor sNetwork =
+            createPool("network", 2, 8, Process.THREAD_PRIORITY_DEFAULT);
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Run the given work in the pool for the given priority
+     *
+     * @throws RejectedExecutionException when the queue of that pool is full
+     */
+    static Future<?> submit(int priority, Runnable work) {
+        return getPool(priority).submit(work);
+    }
+
+    /**
+     * Remove cancelled work from the queue of the pool for the given priority
+     * <p>
+     * Cancelled work would otherwise keep taking up queue slots until a thread gets to it
+     */
+    static void purge(int priority) {
+        getPool(priority).purge();
+    }
+
+    /**
+     * The pool for the given priority
+     */
+    private static ThreadPoolExecutor getPool(int priority) {
+        switch (priority) {
+            case PRIORITY_INTERACTIVE:
+                return sInteractive;
+            case PRIORITY_NETWORK:
+                return sNetwork;
+            default:
+                return sBackground;
+        }
+    }
+
+    /**
+     * Run the given work on the main thread
+     */
+    static void post(Runnable work) {
+        sMainHandler.post(work);
+    }
+
+    /**
+     * Create a pool with a fixed number of threads and a bounded queue
+     */
+    private static ThreadPoolExecutor createPool(final String name, int threads, int queue,
+                                                 final int threadPriority) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(threadPriority);
+                        r.run();
+                    }
+                }, name + " #" + mCount.getAndIncrement());
+            }
+        };
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queue), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
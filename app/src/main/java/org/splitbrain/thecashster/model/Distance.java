@@ -0,0 +1,109 @@
+package org.splitbrain.thecashster.model;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.List;
+
+/**
+ * Distance calculations for ranking places
+ * <p>
+ * All math is done in double precision. The earlier float based haversine lost about a meter
+ * per kilometer for nearby places which showed up as jumping distances in the list.
+ * <p>
+ * Nearby places use the equirectangular approximation. It needs the cosine of the mean
+ * latitude of both points, which is derived from the origin's sine and cosine with a first
+ * order Taylor step, so no trigonometry is needed per point. Within FAST_LIMIT this is off by
+ * a few centimeters at most, using the origin's cosine alone was off by about two meters at
+ * 70° latitude. Everything further away uses the haversine formula.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ * @link https://www.movable-type.co.uk/scripts/latlong.html
+ */
+public class Distance {
+
+    private static final double EARTH_RADIUS = 6371000.0;
+    // up to this many meters the equirectangular approximation is good enough
+    private static final double FAST_LIMIT = 5000.0;
+    private static final double DEG_TO_RAD = Math.PI / 180.0;
+
+    /**
+     * Calculate the distance between the given points in meters
+     */
+    public static int between(double lat1, double lon1, double lat2, double lon2) {
+        double lat0 = lat1 * DEG_TO_RAD;
+        return calculate(lat0, lon1 * DEG_TO_RAD, Math.cos(lat0), Math.sin(lat0), lat2, lon2);
+    }
+
+    /**
+     * Calculate the distances of many points to a single origin in meters
+     *
+     * @param originLat latitude of the origin
+     * @param originLon longitude of the origin
+     * @param lats      latitudes of the points
+     * @param lons      longitudes of the points
+     * @param out       receives the distances
+     * @param count     the number of points to calculate
+     */
+    public static void compute(double originLat, double originLon,
+                               double[] lats, double[] lons, int[] out, int count) {
+        double lat0 = originLat * DEG_TO_RAD;
+        double lon0 = originLon * DEG_TO_RAD;
+        double cos0 = Math.cos(lat0);
+        double sin0 = Math.sin(lat0);
+
+        for (int i = 0; i < count; i++) {
+            out[i] = calculate(lat0, lon0, cos0, sin0, lats[i], lons[i]);
+        }
+    }
+
+    /**
+     * Set the distance of all the given places to the origin
+     */
+    public static void apply(LatLng origin, List<Place> places) {
+        int count = places.size();
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        int[] out = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            Place place = places.get(i);
+            lats[i] = place.getLat();
+            lons[i] = place.getLon();
+        }
+        compute(origin.latitude, origin.longitude, lats, lons, out, count);
+        for (int i = 0; i < count; i++) {
+            places.get(i).setDistance(out[i]);
+        }
+    }
+
+    /**
+     * Calculate a single distance
+     *
+     * @param lat0 origin latitude in radians
+     * @param lon0 origin longitude in radians
+     * @param cos0 cosine of the origin latitude
+     * @param sin0 sine of the origin latitude
+     * @param lat  point latitude in degrees
+     * @param lon  point longitude in degrees
+     * @return distance in meters
+     */
+    private static int calculate(double lat0, double lon0, double cos0, double sin0,
+                                 double lat, double lon) {
+        double lat1 = lat * DEG_TO_RAD;
+        double dLat = lat1 - lat0;
+        double dLon = lon * DEG_TO_RAD - lon0;
+
+        // cos(lat0 + dLat / 2) for small dLat
+        double x = dLon * (cos0 - sin0 * dLat / 2);
+        double d = EARTH_RADIUS * Math.sqrt(x * x + dLat * dLat);
+
+        if (d > FAST_LIMIT) {
+            double sLat = Math.sin(dLat / 2);
+            double sLon = Math.sin(dLon / 2);
+            double a = sLat * sLat + cos0 * Math.cos(lat1) * sLon * sLon;
+            d = EARTH_RADIUS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+
+        return (int) Math.round(d);
+    }
+}
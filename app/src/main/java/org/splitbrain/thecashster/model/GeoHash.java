@@ -0,0 +1,115 @@
+package org.splitbrain.thecashster.model;
+
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding for Places
+ * <p>
+ * Each place stores the geohash of its location in an indexed field. Looking up places
+ * within a bounding box can then be done by asking for all cells covering that box instead
+ * of scanning the lat/lon columns of every stored place.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ * @link https://en.wikipedia.org/wiki/Geohash
+ */
+public class GeoHash {
+
+    // the precision stored with each place, 6 chars are about 1.2km x 0.6km
+    public static final int PRECISION = 6;
+    // the maximum number of cells we're willing to query for a bounding box
+    private static final int MAX_CELLS = 64;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * Calculate the geohash for the given location at the default precision
+     */
+    public static String encode(double lat, double lon) {
+        return encode(lat, lon, PRECISION);
+    }
+
+    /**
+     * Calculate the geohash for the given location
+     *
+     * @param lat       latitude
+     * @param lon       longitude
+     * @param precision number of characters in the resulting hash
+     * @return the geohash
+     */
+    public static String encode(double lat, double lon, int precision) {
+        double minLat = -90.0, maxLat = 90.0;
+        double minLon = -180.0, maxLon = 180.0;
+        char[] hash = new char[precision];
+        boolean even = true;
+        int bit = 0;
+        int ch = 0;
+        int pos = 0;
+
+        while (pos < precision) {
+            if (even) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+
+            if (++bit == 5) {
+                hash[pos++] = BASE32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+
+        return new String(hash);
+    }
+
+    /**
+     * Get all cells at the default precision that cover the given bounding box
+     *
+     * @return the cells or null if the box is too large (or crosses the date line) to be
+     * covered with a reasonable number of cells
+     */
+    @Nullable
+    public static String[] cover(double south, double west, double north, double east) {
+        if (west > east || south > north) return null;
+
+        int bits = PRECISION * 5;
+        double cellWidth = 360.0 / (1L << ((bits + 1) / 2));
+        double cellHeight = 180.0 / (1L << (bits / 2));
+
+        long cols = (long) Math.ceil((east - west) / cellWidth) + 1;
+        long rows = (long) Math.ceil((north - south) / cellHeight) + 1;
+        if (cols * rows > MAX_CELLS * 4) return null;
+
+        Set<String> cells = new LinkedHashSet<>();
+        for (double lat = south; ; lat += cellHeight) {
+            if (lat > north) lat = north;
+            for (double lon = west; ; lon += cellWidth) {
+                if (lon > east) lon = east;
+                cells.add(encode(lat, lon));
+                if (lon >= east) break;
+            }
+            if (lat >= north) break;
+        }
+
+        if (cells.size() > MAX_CELLS) return null;
+        return cells.toArray(new String[cells.size()]);
+    }
+}
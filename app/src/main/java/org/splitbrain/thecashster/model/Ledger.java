@@ -0,0 +1,217 @@
+package org.splitbrain.thecashster.model;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import io.realm.Realm;
+
+/**
+ * Keeps running totals of all booked transactions
+ * <p>
+ * Each transaction is added to the Rollups of its day, week, month and place when it is
+ * stored. Totals can then be read with a single lookup instead of summing up transactions.
+ * Weeks follow ISO 8601, all periods use the device's time zone.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class Ledger {
+
+    /**
+     * Where the totals are kept, lets the bookkeeping be tested without a database
+     */
+    interface Totals {
+        /**
+         * Add to the totals stored under the given key
+         */
+        void add(String key, long cents, int count);
+    }
+
+    /**
+     * Add the given transaction to the totals
+     * <p>
+     * Has to be called within the write transaction storing the transaction
+     */
+    public static void record(Realm realm, Transaction tx) {
+        record(getTotals(realm), tx.getDt(), getPlaceId(tx), tx.getCents());
+    }
+
+    /**
+     * Take the given transaction out of the totals again
+     * <p>
+     * Has to be called within a write transaction
+     */
+    public static void remove(Realm realm, Transaction tx) {
+        remove(getTotals(realm), tx.getDt(), getPlaceId(tx), tx.getCents());
+    }
+
+    /**
+     * Change the amount of the given transaction and update the totals accordingly
+     * <p>
+     * Has to be called within a write transaction
+     */
+    public static void change(Realm realm, Transaction tx, long cents) {
+        change(getTotals(realm), tx.getDt(), getPlaceId(tx), tx.getCents(), cents);
+        tx.setCents(cents);
+    }
+
+    /**
+     * Add a transaction to the totals
+     */
+    static void record(Totals totals, Date dt, String placeId, long cents) {
+        for (String key : getKeys(dt, placeId)) {
+            totals.add(key, cents, 1);
+        }
+    }
+
+    /**
+     * Take a transaction out of the totals
+     */
+    static void remove(Totals totals, Date dt, String placeId, long cents) {
+        for (String key : getKeys(dt, placeId)) {
+            totals.add(key, -cents, -1);
+        }
+    }
+
+    /**
+     * Change the amount of a transaction in the totals
+     */
+    static void change(Totals totals, Date dt, String placeId, long from, long to) {
+        long delta = to - from;
+        for (String key : getKeys(dt, placeId)) {
+            totals.add(key, delta, 0);
+        }
+    }
+
+    /**
+     * Add to the totals stored under the given key
+     * <p>
+     * Has to be called within a write transaction
+     */
+    public static void add(Realm realm, String key, long cents, int count) {
+        Rollup rollup = realm.where(Rollup.class).equalTo("key", key).findFirst();
+        if (rollup == null) rollup = realm.createObject(Rollup.class, key);
+        rollup.setCents(rollup.getCents() + cents);
+        rollup.setCount(rollup.getCount() + count);
+    }
+
+    /**
+     * Get the total amount stored under the given key
+     *
+     * @return the amount in cents
+     */
+    public static long getCents(Realm realm, String key) {
+        Rollup rollup = realm.where(Rollup.class).equalTo("key", key).findFirst();
+        return rollup == null ? 0 : rollup.getCents();
+    }
+
+    /**
+     * Get the number of transactions stored under the given key
+     */
+    public static int getCount(Realm realm, String key) {
+        Rollup rollup = realm.where(Rollup.class).equalTo("key", key).findFirst();
+        return rollup == null ? 0 : rollup.getCount();
+    }
+
+    /**
+     * All keys a transaction at the given time and place counts towards
+     *
+     * @param placeId may be null when the transaction has no place
+     */
+    static String[] getKeys(Date dt, String placeId) {
+        Calendar cal = getCalendar(dt);
+        if (placeId == null) {
+            return new String[]{dayKey(cal), weekKey(cal), monthKey(cal)};
+        }
+        return new String[]{dayKey(cal), weekKey(cal), monthKey(cal), placeKey(placeId)};
+    }
+
+    /**
+     * Key for the day of the given date, eg. d:2017-11-23
+     */
+    public static String dayKey(Date dt) {
+        return dayKey(getCalendar(dt));
+    }
+
+    /**
+     * Key for the week of the given date, eg. w:2017-W47
+     */
+    public static String weekKey(Date dt) {
+        return weekKey(getCalendar(dt));
+    }
+
+    /**
+     * Key for the month of the given date, eg. m:2017-11
+     */
+    public static String monthKey(Date dt) {
+        return monthKey(getCalendar(dt));
+    }
+
+    /**
+     * Key for the given place
+     */
+    public static String placeKey(String placeId) {
+        return "p:" + placeId;
+    }
+
+    private static String dayKey(Calendar cal) {
+        StringBuilder sb = new StringBuilder(12).append("d:").append(cal.get(Calendar.YEAR));
+        pad(sb.append('-'), cal.get(Calendar.MONTH) + 1);
+        pad(sb.append('-'), cal.get(Calendar.DAY_OF_MONTH));
+        return sb.toString();
+    }
+
+    private static String weekKey(Calendar cal) {
+        int week = cal.get(Calendar.WEEK_OF_YEAR);
+        int year = cal.get(Calendar.YEAR);
+        // the first and last days of a year may belong to a week of the neighbouring year
+        if (week == 1 && cal.get(Calendar.MONTH) == Calendar.DECEMBER) {
+            year++;
+        } else if (week >= 52 && cal.get(Calendar.MONTH) == Calendar.JANUARY) {
+            year--;
+        }
+        StringBuilder sb = new StringBuilder(10).append("w:").append(year);
+        pad(sb.append("-W"), week);
+        return sb.toString();
+    }
+
+    private static String monthKey(Calendar cal) {
+        StringBuilder sb = new StringBuilder(9).append("m:").append(cal.get(Calendar.YEAR));
+        pad(sb.append('-'), cal.get(Calendar.MONTH) + 1);
+        return sb.toString();
+    }
+
+    /**
+     * A calendar set to the given date using ISO 8601 weeks
+     */
+    private static Calendar getCalendar(Date dt) {
+        Calendar cal = Calendar.getInstance();
+        cal.setFirstDayOfWeek(Calendar.MONDAY);
+        cal.setMinimalDaysInFirstWeek(4);
+        cal.setTime(dt);
+        return cal;
+    }
+
+    /**
+     * Append the number with at least two digits
+     */
+    private static void pad(StringBuilder sb, int value) {
+        if (value < 10) sb.append('0');
+        sb.append(value);
+    }
+
+    /**
+     * The totals stored as Rollups in the given Realm
+     */
+    private static Totals getTotals(final Realm realm) {
+        return new Totals() {
+            @Override
+            public void add(String key, long cents, int count) {
+                Ledger.add(realm, key, cents, count);
+            }
+        };
+    }
+
+    private static String getPlaceId(Transaction tx) {
+        return tx.getPlace() == null ? null : tx.getPlace().getId();
+    }
+}
@@ -0,0 +1,145 @@
+package org.splitbrain.thecashster.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
+import io.realm.RealmMigration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+
+/**
+ * Migrates the Realm schema between versions
+ * <p>
+ * Whenever a model changes, increase SCHEMA_VERSION and add a step below.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class Migration implements RealmMigration {
+
+    public static final long SCHEMA_VERSION = 7;
+
+    @Override
+    public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+        RealmSchema schema = realm.getSchema();
+
+        // version 1: geohash index for places
+        if (oldVersion < 1) {
+            RealmObjectSchema place = schema.get("Place");
+            assert place != null;
+            place.addField("geohash", String.class, FieldAttribute.INDEXED)
+                    .transform(new RealmObjectSchema.Function() {
+                        @Override
+                        public void apply(DynamicRealmObject obj) {
+                            double lat = obj.isNull("lat") ? 0.0 : obj.getDouble("lat");
+                            double lon = obj.isNull("lon") ? 0.0 : obj.getDouble("lon");
+                            obj.setString("geohash", GeoHash.encode(lat, lon));
+                        }
+                    });
+            oldVersion++;
+        }
+
+        // version 2: sync state for transactions
+        if (oldVersion < 2) {
+            RealmObjectSchema transaction = schema.get("Transaction");
+            assert transaction != null;
+            transaction.addField("state", int.class, FieldAttribute.INDEXED);
+            oldVersion++;
+        }
+
+        // version 3: usage counter for places
+        if (oldVersion < 3) {
+            RealmObjectSchema place = schema.get("Place");
+            assert place != null;
+            place.addField("usecount", int.class);
+            oldVersion++;
+        }
+
+        // version 4: search index for places
+        if (oldVersion < 4) {
+            schema.create("PlaceToken")
+                    .addField("token", String.class, FieldAttribute.INDEXED)
+                    .addField("place", String.class, FieldAttribute.INDEXED)
+                    .addField("weight", int.class);
+
+            for (DynamicRealmObject place : realm.where("Place").findAll()) {
+                String text = nonNull(place.getString("name"))
+                        + " " + nonNull(place.getString("address"));
+                Map<String, Integer> tokens = PlaceIndex.getTokens(text);
+                for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+                    DynamicRealmObject token = realm.createObject("PlaceToken");
+                    token.setString("token", entry.getKey());
+                    token.setString("place", place.getString("id"));
+                    token.setInt("weight", entry.getValue());
+                }
+            }
+            oldVersion++;
+        }
+
+        // version 5: amounts in cents instead of floats
+        if (oldVersion < 5) {
+            RealmObjectSchema transaction = schema.get("Transaction");
+            assert transaction != null;
+            transaction.addField("cents", long.class)
+                    .transform(new RealmObjectSchema.Function() {
+                        @Override
+                        public void apply(DynamicRealmObject obj) {
+                            obj.setLong("cents", Math.round(obj.getFloat("amount") * 100.0));
+                        }
+                    })
+                    .removeField("amount");
+            oldVersion++;
+        }
+
+        // version 6: running totals for the ledger
+        if (oldVersion < 6) {
+            schema.create("Rollup")
+                    .addField("key", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("cents", long.class)
+                    .addField("count", int.class);
+
+            // acknowledged transactions were deleted until now, only pending ones are left
+            Map<String, long[]> totals = new HashMap<>();
+            for (DynamicRealmObject tx : realm.where("Transaction").findAll()) {
+                DynamicRealmObject place = tx.getObject("place");
+                String placeId = place == null ? null : place.getString("id");
+                for (String key : Ledger.getKeys(tx.getDate("dt"), placeId)) {
+                    long[] total = totals.get(key);
+                    if (total == null) {
+                        total = new long[2];
+                        totals.put(key, total);
+                    }
+                    total[0] += tx.getLong("cents");
+                    total[1]++;
+                }
+            }
+            for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+                DynamicRealmObject rollup = realm.createObject("Rollup", entry.getKey());
+                rollup.setLong("cents", entry.getValue()[0]);
+                rollup.setInt("count", (int) entry.getValue()[1]);
+            }
+            oldVersion++;
+        }
+
+        // version 7: remember which spreadsheet acknowledged a transaction
+        if (oldVersion < 7) {
+            RealmObjectSchema transaction = schema.get("Transaction");
+            assert transaction != null;
+            transaction.addField("sheet", String.class, FieldAttribute.INDEXED)
+                    .transform(new RealmObjectSchema.Function() {
+                        @Override
+                        public void apply(DynamicRealmObject obj) {
+                            // unknown for older transactions, they will not be reconciled
+                            obj.setString("sheet", "");
+                        }
+                    });
+            oldVersion++;
+        }
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+}
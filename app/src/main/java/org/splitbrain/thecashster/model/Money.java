@@ -0,0 +1,63 @@
+package org.splitbrain.thecashster.model;
+
+/**
+ * Helpers for amounts of money
+ * <p>
+ * Amounts are passed around as long values counting cents. This avoids the rounding errors
+ * of floating point numbers and allows formatting without creating new objects.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public final class Money {
+
+    // longest possible formatted amount: sign, 19 digits and the decimal point
+    public static final int MAX_LENGTH = 21;
+
+    private Money() {
+    }
+
+    /**
+     * Format the given amount with two decimals
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount like "-12.34"
+     */
+    public static String format(long cents) {
+        char[] buf = new char[MAX_LENGTH];
+        int len = format(cents, buf, 0);
+        return new String(buf, 0, len);
+    }
+
+    /**
+     * Format the given amount with two decimals into the given buffer
+     * <p>
+     * Does not allocate anything, so it can be used on every key press
+     *
+     * @param cents  the amount in cents
+     * @param buf    the buffer to write to, needs MAX_LENGTH characters after the offset
+     * @param offset where to start writing in the buffer
+     * @return the number of characters written
+     */
+    public static int format(long cents, char[] buf, int offset) {
+        boolean negative = cents < 0;
+        // work with negative values so Long.MIN_VALUE can be handled, too
+        long value = negative ? cents : -cents;
+
+        int end = offset + MAX_LENGTH;
+        int pos = end;
+        for (int i = 0; i < 2; i++) {
+            buf[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) buf[--pos] = '-';
+
+        int len = end - pos;
+        System.arraycopy(buf, pos, buf, offset, len);
+        return len;
+    }
+}
@@ -2,8 +2,6 @@ package org.splitbrain.thecashster.model;
 
 import com.google.android.gms.maps.model.LatLng;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.Objects;
 
@@ -12,8 +10,6 @@ import io.realm.annotations.Ignore;
 import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
-import static java.lang.Math.round;
-
 /**
  * Model for a single place. We keep used places stored locally for
  * fast display when using them again
@@ -30,9 +26,12 @@ public class Place extends RealmObject {
     private Double lat = 0.0;
     private Double lon = 0.0;
     @Index
+    private String geohash = "";
+    @Index
     private Date lastused;
     private String address = "";
     private String category = "";
+    private int usecount = 0;
 
     @Ignore
     private boolean local = false;
@@ -55,61 +54,42 @@ public class Place extends RealmObject {
         String s = name;
         if (!foursquare.isEmpty()) s = foursquare;
 
-        try {
-            // Create MD5 Hash
-            MessageDigest digest = java.security.MessageDigest.getInstance("MD5");
-            digest.update(s.getBytes());
-            byte messageDigest[] = digest.digest();
-
-            // Create Hex String
-            StringBuilder hexString = new StringBuilder();
-            for (byte aMessageDigest : messageDigest) {
-                StringBuilder h = new StringBuilder(Integer.toHexString(0xFF & aMessageDigest));
-                while (h.length() < 2)
-                    h.insert(0, "0");
-                hexString.append(h);
-            }
-            id = hexString.toString();
-
-        } catch (NoSuchAlgorithmException e) {
-            // should not happen
-            e.printStackTrace();
-        }
-
+        id = PlaceId.create(s);
         lastused = new Date();
     }
 
+    /**
+     * Set the foursquare identifier and name in one go
+     * <p>
+     * Unlike calling both setters this calculates the primary key only once
+     */
+    public void setVenue(String foursquare, String name) {
+        this.foursquare = foursquare;
+        this.name = name;
+        updateId();
+    }
+
     /**
      * Set the location in one go
      */
     public void setLatLng(LatLng ll) {
         this.lat = ll.latitude;
         this.lon = ll.longitude;
+        updateGeohash();
     }
 
     /**
-     * Set the distance property by calculating it from the given point
+     * Recalculates the geohash used to look up places by location
      */
-    public void setDistanceFrom(LatLng ll) {
-        LatLng self = new LatLng(lat, lon);
-        distance = calculateDistance(self, ll);
+    private void updateGeohash() {
+        geohash = GeoHash.encode(lat, lon);
     }
 
     /**
-     * Calculate the distance between the given points in meters
-     *
-     * @link https://stackoverflow.com/a/8550740/172068
+     * Set the distance property by calculating it from the given point
      */
-    private static int calculateDistance(LatLng ll1, LatLng ll2) {
-        final int earthRadius = 6371;
-
-        float dLat = (float) Math.toRadians(ll2.latitude - ll1.latitude);
-        float dLon = (float) Math.toRadians(ll2.longitude - ll1.longitude);
-        float a =
-                (float) (Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(ll1.latitude))
-                        * Math.cos(Math.toRadians(ll2.latitude)) * Math.sin(dLon / 2) * Math.sin(dLon / 2));
-        float c = (float) (2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a)));
-        return round(earthRadius * c * 1000);
+    public void setDistanceFrom(LatLng ll) {
+        distance = Distance.between(ll.latitude, ll.longitude, lat, lon);
     }
 
     /**
@@ -119,6 +99,14 @@ public class Place extends RealmObject {
         lastused = new Date();
     }
 
+    /**
+     * Record that a transaction has been booked at this place
+     */
+    public void markUsed() {
+        updateLastUsed();
+        usecount++;
+    }
+
     // region Default Setter/Getter
 
     public String getId() {
@@ -149,6 +137,7 @@ public class Place extends RealmObject {
 
     public void setLat(Double lat) {
         this.lat = lat;
+        updateGeohash();
     }
 
     public Double getLon() {
@@ -157,6 +146,11 @@ public class Place extends RealmObject {
 
     public void setLon(Double lon) {
         this.lon = lon;
+        updateGeohash();
+    }
+
+    public String getGeohash() {
+        return geohash;
     }
 
     public String getAddress() {
@@ -183,6 +177,14 @@ public class Place extends RealmObject {
         this.category = category;
     }
 
+    public int getUsecount() {
+        return usecount;
+    }
+
+    public void setUsecount(int usecount) {
+        this.usecount = usecount;
+    }
+
     public boolean isLocal() {
         return local;
     }
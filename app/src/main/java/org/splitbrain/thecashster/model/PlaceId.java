@@ -0,0 +1,49 @@
+package org.splitbrain.thecashster.model;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates the primary keys for places
+ * <p>
+ * The key is the hex encoded MD5 hash of the UTF-8 encoded input. Each thread reuses its own
+ * MessageDigest instance.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceId {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> sDigest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                // should not happen, MD5 is always available
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * Create the ID for the given input
+     *
+     * @param input the name or foursquare ID of the place
+     * @return 32 character hex string
+     */
+    public static String create(String input) {
+        MessageDigest digest = sDigest.get();
+        byte[] hash = digest.digest(input.getBytes(UTF8));
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+}
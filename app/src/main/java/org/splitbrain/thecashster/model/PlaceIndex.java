@@ -0,0 +1,210 @@
+package org.splitbrain.thecashster.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Full text index for searching local places
+ * <p>
+ * Names and addresses are split into lowercased, accent-free words. For each word we store
+ * the word itself, all its prefixes and all variants with a single letter removed as
+ * PlaceTokens. Searching is then a lookup of indexed tokens. Matching the removal variants
+ * of the query against those of the word finds words with a single typo.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceIndex {
+
+    static final int WEIGHT_WORD = 3;
+    static final int WEIGHT_PREFIX = 2;
+    static final int WEIGHT_TYPO = 1;
+
+    // shortest prefix we index
+    private static final int MIN_PREFIX = 2;
+    // shortest word we do typo matching on
+    private static final int MIN_TYPO = 4;
+
+    /**
+     * Looks up stored tokens, lets the matching be tested without a database
+     */
+    interface TokenLookup {
+        /**
+         * @param tokens    the tokens to look for
+         * @param minWeight ignore tokens with a lower weight
+         * @return place IDs mapped to the highest weight of their matching tokens
+         */
+        Map<String, Integer> find(String[] tokens, int minWeight);
+    }
+
+    /**
+     * Update the tokens for the given place
+     * <p>
+     * Has to be called within a write transaction
+     */
+    public static void update(Realm realm, Place place) {
+        remove(realm, place.getId());
+
+        Map<String, Integer> tokens = getTokens(place.getName() + " " + place.getAddress());
+        for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+            PlaceToken token = realm.createObject(PlaceToken.class);
+            token.setToken(entry.getKey());
+            token.setPlace(place.getId());
+            token.setWeight(entry.getValue());
+        }
+    }
+
+    /**
+     * Remove all tokens for the given place
+     * <p>
+     * Has to be called within a write transaction
+     */
+    public static void remove(Realm realm, String placeId) {
+        realm.where(PlaceToken.class)
+                .equalTo("place", placeId)
+                .findAll()
+                .deleteAllFromRealm();
+    }
+
+    /**
+     * Find the places matching all words of the given filter
+     *
+     * @return place IDs mapped to a relevance score between 0 and 1
+     */
+    public static Map<String, Float> search(final Realm realm, String filter) {
+        return search(new TokenLookup() {
+            @Override
+            public Map<String, Integer> find(String[] tokens, int minWeight) {
+                Map<String, Integer> matches = new HashMap<>();
+                RealmResults<PlaceToken> found = realm.where(PlaceToken.class)
+                        .in("token", tokens)
+                        .greaterThanOrEqualTo("weight", minWeight)
+                        .findAll();
+                for (PlaceToken token : found) {
+                    put(matches, token.getPlace(), token.getWeight());
+                }
+                return matches;
+            }
+        }, filter);
+    }
+
+    /**
+     * Find the places matching all words of the given filter
+     *
+     * @return place IDs mapped to a relevance score between 0 and 1
+     */
+    static Map<String, Float> search(TokenLookup lookup, String filter) {
+        List<String> words = getWords(filter);
+        Map<String, Float> result = new HashMap<>();
+        if (words.isEmpty()) return result;
+
+        boolean first = true;
+        for (String word : words) {
+            Map<String, Integer> matches = match(lookup, word);
+
+            if (first) {
+                for (Map.Entry<String, Integer> entry : matches.entrySet()) {
+                    result.put(entry.getKey(), (float) entry.getValue());
+                }
+                first = false;
+            } else {
+                // only keep places matching all words
+                Map<String, Float> combined = new HashMap<>();
+                for (Map.Entry<String, Float> entry : result.entrySet()) {
+                    Integer weight = matches.get(entry.getKey());
+                    if (weight != null) combined.put(entry.getKey(), entry.getValue() + weight);
+                }
+                result = combined;
+            }
+            if (result.isEmpty()) return result;
+        }
+
+        float max = WEIGHT_WORD * words.size();
+        for (Map.Entry<String, Float> entry : result.entrySet()) {
+            entry.setValue(entry.getValue() / max);
+        }
+        return result;
+    }
+
+    /**
+     * Find the places matching a single query word
+     *
+     * @return place IDs mapped to the best weight
+     */
+    private static Map<String, Integer> match(TokenLookup lookup, String word) {
+        Map<String, Integer> matches = lookup.find(new String[]{word}, WEIGHT_PREFIX);
+        if (!matches.isEmpty() || word.length() < MIN_TYPO) return matches;
+
+        // nothing found, try single typos
+        Set<String> variants = getDeletions(word);
+        variants.add(word);
+        matches = lookup.find(variants.toArray(new String[variants.size()]), WEIGHT_TYPO);
+        for (Map.Entry<String, Integer> entry : matches.entrySet()) {
+            entry.setValue(WEIGHT_TYPO);
+        }
+        return matches;
+    }
+
+    /**
+     * Create all tokens for the given text
+     *
+     * @return tokens mapped to their weight
+     */
+    static Map<String, Integer> getTokens(String text) {
+        Map<String, Integer> tokens = new HashMap<>();
+        for (String word : getWords(text)) {
+            put(tokens, word, WEIGHT_WORD);
+            for (int i = MIN_PREFIX; i < word.length(); i++) {
+                put(tokens, word.substring(0, i), WEIGHT_PREFIX);
+            }
+            if (word.length() >= MIN_TYPO) {
+                for (String deletion : getDeletions(word)) {
+                    put(tokens, deletion, WEIGHT_TYPO);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Split the given text into normalized words
+     */
+    static List<String> getWords(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+
+        List<String> words = new ArrayList<>();
+        for (String word : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * All variants of the word with a single letter removed
+     */
+    private static Set<String> getDeletions(String word) {
+        Set<String> deletions = new HashSet<>();
+        for (int i = 0; i < word.length(); i++) {
+            deletions.add(word.substring(0, i) + word.substring(i + 1));
+        }
+        return deletions;
+    }
+
+    /**
+     * Put the weight into the map unless a higher one is already there
+     */
+    private static void put(Map<String, Integer> map, String key, int weight) {
+        Integer current = map.get(key);
+        if (current == null || current < weight) map.put(key, weight);
+    }
+}
@@ -0,0 +1,115 @@
+package org.splitbrain.thecashster.model;
+
+/**
+ * What the place list shows about a place
+ * <p>
+ * Rows are immutable and carry only what is displayed plus the rank, so the info line is built
+ * once when the row is created instead of on every bind. Rows that did not change between two
+ * refreshes can simply be reused.
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public final class PlaceRow {
+
+    private final String id;
+    private final long stableId;
+    private final String name;
+    private final String info;
+    private final int distance;
+    private final boolean local;
+    private final float score;
+
+    private PlaceRow(String id, String name, String info, int distance, boolean local,
+                     float score) {
+        this.id = id;
+        this.stableId = toLong(id);
+        this.name = name;
+        this.info = info;
+        this.distance = distance;
+        this.local = local;
+        this.score = score;
+    }
+
+    /**
+     * Create the row for the given place
+     *
+     * @param place    the place, may be a managed object
+     * @param distance the distance to the place in meters
+     * @param local    is this a locally stored place?
+     * @param score    the rank of the place
+     */
+    public static PlaceRow create(Place place, int distance, boolean local, float score) {
+        String info = place.getInfo();
+        if (info.isEmpty()) {
+            info = new StringBuilder(64)
+                    .append(place.getAddress())
+                    .append(" [")
+                    .append(place.getCategory())
+                    .append("] ")
+                    .append(distance)
+                    .append('m')
+                    .toString();
+        }
+        return new PlaceRow(place.getId(), place.getName(), info, distance, local, score);
+    }
+
+    /**
+     * Use the first 64 bits of the hex encoded MD5 place ID as a number
+     */
+    private static long toLong(String id) {
+        long result = 0;
+        int len = Math.min(id.length(), 16);
+        for (int i = 0; i < len; i++) {
+            result = (result << 4) | Character.digit(id.charAt(i), 16);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the given row shows exactly the same as this one
+     */
+    public boolean sameAs(PlaceRow other) {
+        return this == other || (other != null
+                && id.equals(other.id)
+                && name.equals(other.name)
+                && info.equals(other.info)
+                && distance == other.distance
+                && local == other.local
+                && score == other.score);
+    }
+
+    // region Getters
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * A numeric ID that stays the same for the same place
+     */
+    public long getStableId() {
+        return stableId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    // endregion
+}
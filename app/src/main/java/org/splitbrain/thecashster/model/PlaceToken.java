@@ -0,0 +1,48 @@
+package org.splitbrain.thecashster.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+
+/**
+ * A single search token pointing to a place
+ * <p>
+ * Managed by the PlaceIndex, never create these directly
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+@SuppressWarnings("unused")
+public class PlaceToken extends RealmObject {
+    @Index
+    private String token = "";
+    @Index
+    private String place = "";
+    private int weight = 0;
+
+    // region default Setter/Getters
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getPlace() {
+        return place;
+    }
+
+    public void setPlace(String place) {
+        this.place = place;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    // endregion
+}
@@ -0,0 +1,43 @@
+package org.splitbrain.thecashster.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * The summed up amount of all transactions in a period or at a place
+ * <p>
+ * Managed by the Ledger, never create these directly
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+@SuppressWarnings("unused")
+public class Rollup extends RealmObject {
+    @PrimaryKey
+    private String key;
+    private long cents = 0;
+    private int count = 0;
+
+    // region default Setter/Getters
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public void setCents(long cents) {
+        this.cents = cents;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    // endregion
+}
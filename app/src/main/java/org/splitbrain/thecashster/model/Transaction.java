@@ -4,22 +4,37 @@ import java.util.Date;
 import java.util.UUID;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
 /**
  * Model for a transaction
  * <p>
- * This is stored locally until it has been transferred to Google Sheets
+ * Transactions are kept locally as a ledger and transferred to Google Sheets. The state field
+ * tracks where the transaction is in that process: it starts as pending, is marked in flight
+ * while an append request carrying it is running and becomes acknowledged once the
+ * spreadsheet confirmed the append. Acknowledged transactions whose row was deleted from the
+ * spreadsheet are marked as removed.
  *
  * @author Andreas Gohr andi@splitbrain.org
  */
 @SuppressWarnings("unused")
 public class Transaction extends RealmObject {
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_INFLIGHT = 1;
+    public static final int STATE_ACKED = 2;
+    public static final int STATE_REMOVED = 3;
+
     @PrimaryKey
     private String txid;
     private Date dt;
-    private float amount = 0.0f;
+    private long cents = 0;
     private Place place;
+    @Index
+    private int state = STATE_PENDING;
+    // the spreadsheet the transaction was acknowledged by
+    @Index
+    private String sheet = "";
 
     /**
      * Constructor
@@ -35,10 +50,13 @@ public class Transaction extends RealmObject {
      * Constructor
      * <p>
      * Preferred way to create a new transaction
+     *
+     * @param cents the amount in cents
+     * @param place where the money was spent
      */
-    public Transaction(float amount, Place place) {
+    public Transaction(long cents, Place place) {
         this.txid = UUID.randomUUID().toString();
-        this.amount = amount;
+        this.cents = cents;
         this.place = place;
         this.dt = new Date();
     }
@@ -57,12 +75,12 @@ public class Transaction extends RealmObject {
         this.dt = dt;
     }
 
-    public float getAmount() {
-        return amount;
+    public long getCents() {
+        return cents;
     }
 
-    public void setAmount(float amount) {
-        this.amount = amount;
+    public void setCents(long cents) {
+        this.cents = cents;
     }
 
     public Place getPlace() {
@@ -73,5 +91,21 @@ public class Transaction extends RealmObject {
         this.place = place;
     }
 
+    public int getState() {
+        return state;
+    }
+
+    public void setState(int state) {
+        this.state = state;
+    }
+
+    public String getSheet() {
+        return sheet;
+    }
+
+    public void setSheet(String sheet) {
+        this.sheet = sheet;
+    }
+
     // endregion
 }
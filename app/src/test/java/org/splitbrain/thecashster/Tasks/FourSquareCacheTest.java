@@ -0,0 +1,30 @@
+package org.splitbrain.thecashster.Tasks;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bucketing of the search radius
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class FourSquareCacheTest {
+
+    @Test
+    public void getRadius() {
+        assertEquals(50, FourSquareCache.getRadius(0));
+        assertEquals(50, FourSquareCache.getRadius(24));
+        assertEquals(50, FourSquareCache.getRadius(50));
+        assertEquals(100, FourSquareCache.getRadius(51));
+        assertEquals(200, FourSquareCache.getRadius(130));
+        assertEquals(200, FourSquareCache.getRadius(176));
+        assertEquals(3200, FourSquareCache.getRadius(3000));
+    }
+
+    @Test
+    public void getRadiusNeverOverflows() {
+        assertTrue(FourSquareCache.getRadius(Integer.MAX_VALUE) > 0);
+    }
+}
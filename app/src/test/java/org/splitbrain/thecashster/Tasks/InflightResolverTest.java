@@ -0,0 +1,163 @@
+package org.splitbrain.thecashster.Tasks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.splitbrain.thecashster.Tasks.SheetReconcilerTest.row;
+import static org.splitbrain.thecashster.Tasks.SheetReconcilerTest.sheet;
+
+/**
+ * Resolving transactions left in flight, including a sync against a faulty fake spreadsheet
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class InflightResolverTest {
+
+    private static final int PENDING = 0;
+    private static final int INFLIGHT = 1;
+    private static final int ACKED = 2;
+
+    @Test
+    public void resolve() {
+        List<List<Object>> tail = sheet(row("tx1"), row(), row("tx3"));
+        InflightResolver result = InflightResolver.resolve(
+                Arrays.asList("tx1", "tx2", "tx3"), tail);
+
+        assertEquals(Arrays.asList("tx1", "tx3"), result.getAcked());
+        assertEquals(Collections.singletonList("tx2"), result.getPending());
+
+        result = InflightResolver.resolve(Arrays.asList("tx1", "tx2"),
+                Collections.<List<Object>>emptyList());
+        assertTrue(result.getAcked().isEmpty());
+        assertEquals(2, result.getPending().size());
+    }
+
+    @Test
+    public void startsWith() {
+        assertTrue(InflightResolver.startsWith(Arrays.asList(row("tx1"), row("tx2")), "tx1"));
+        assertFalse(InflightResolver.startsWith(Arrays.asList(row("tx0"), row("tx1")), "tx1"));
+        assertFalse(InflightResolver.startsWith(Collections.singletonList(row()), "tx1"));
+        assertFalse(InflightResolver.startsWith(
+                Collections.<List<Object>>emptyList(), "tx1"));
+    }
+
+    @Test
+    public void getEndRow() {
+        assertEquals(7, InflightResolver.getEndRow("'Sheet 1'!A5:I7"));
+        assertEquals(1, InflightResolver.getEndRow("Sheet1!A1"));
+        assertEquals(0, InflightResolver.getEndRow("Sheet1!A:I"));
+        assertEquals(0, InflightResolver.getEndRow(""));
+        assertEquals(0, InflightResolver.getEndRow(null));
+        assertEquals(0, InflightResolver.getEndRow("Sheet1!A1:I99999999999"));
+    }
+
+    /**
+     * Sync transactions in chunks against a fake spreadsheet that loses requests and answers
+     * <p>
+     * Follows the protocol of SheetsTask: chunks are marked in flight before sending, in flight
+     * transactions are resolved from the rows after the watermark on the next run and the
+     * watermark is only moved on confirmed appends. In the end every transaction has to be
+     * acknowledged and be in the spreadsheet exactly once.
+     */
+    @Test
+    public void exactlyOnceWithFaults() {
+        for (long seed = 0; seed < 20; seed++) {
+            simulate(new Random(seed), 300);
+        }
+    }
+
+    private void simulate(Random random, int count) {
+        List<List<Object>> sheet = sheet();
+        Map<String, Integer> states = new LinkedHashMap<>();
+        Map<String, Long> ledger = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            states.put("tx" + i, PENDING);
+            ledger.put("tx" + i, (long) i * 100);
+        }
+        String watermarkTxid = null;
+        int watermarkRow = 0;
+
+        for (int run = 0; run < 10000 && withState(states, ACKED).size() < count; run++) {
+            // resolve what an earlier run left in flight
+            List<String> inflight = withState(states, INFLIGHT);
+            if (!inflight.isEmpty()) {
+                List<List<Object>> tail = null;
+                if (watermarkRow > 0) {
+                    tail = sheet.subList(Math.min(watermarkRow - 1, sheet.size()), sheet.size());
+                    if (!InflightResolver.startsWith(tail, watermarkTxid)) tail = null;
+                }
+                if (tail == null) tail = sheet;
+
+                InflightResolver result = InflightResolver.resolve(inflight, tail);
+                setState(states, result.getAcked(), ACKED);
+                setState(states, result.getPending(), PENDING);
+            }
+
+            List<String> chunk = withState(states, PENDING);
+            chunk = chunk.subList(0, Math.min(chunk.size(), 1 + random.nextInt(25)));
+            if (chunk.isEmpty()) continue;
+            setState(states, chunk, INFLIGHT);
+
+            int fault = random.nextInt(6);
+            if (fault == 0) continue; // request lost, the chunk stays in flight
+            if (fault == 1) {
+                // request rejected, the chunk is pending again
+                setState(states, chunk, PENDING);
+                continue;
+            }
+
+            for (String txid : chunk) {
+                sheet.add(row(txid, ledger.get(txid) / 100));
+            }
+            if (fault == 2) continue; // answer lost, the chunk stays in flight
+
+            setState(states, chunk, ACKED);
+            watermarkTxid = chunk.get(chunk.size() - 1);
+            watermarkRow = sheet.size();
+
+            if (fault == 3) {
+                // the user adds a note at the top, moving the watermark row
+                sheet.add(1, row("", "note"));
+            }
+        }
+
+        assertEquals(count, withState(states, ACKED).size());
+        Map<String, Integer> seen = new HashMap<>();
+        for (List<Object> cells : sheet.subList(1, sheet.size())) {
+            String txid = (String) cells.get(0);
+            if (txid.isEmpty()) continue;
+            Integer num = seen.get(txid);
+            seen.put(txid, num == null ? 1 : num + 1);
+        }
+        assertEquals(count, seen.size());
+        for (Map.Entry<String, Integer> entry : seen.entrySet()) {
+            assertEquals(entry.getKey(), 1, (int) entry.getValue());
+        }
+        assertTrue(SheetReconciler.plan(sheet, ledger).isEmpty());
+    }
+
+    private static List<String> withState(Map<String, Integer> states, int state) {
+        List<String> txids = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : states.entrySet()) {
+            if (entry.getValue() == state) txids.add(entry.getKey());
+        }
+        return txids;
+    }
+
+    private static void setState(Map<String, Integer> states, List<String> txids, int state) {
+        for (String txid : new ArrayList<>(txids)) {
+            states.put(txid, state);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.splitbrain.thecashster.Tasks;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Planning the corrections between spreadsheet and ledger
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class SheetReconcilerTest {
+
+    @Test
+    public void nothingToDo() {
+        List<List<Object>> rows = sheet(
+                row("tx1", "12.34"),
+                row("tx2", 5));
+        Map<String, Long> ledger = ledger("tx1", 1234L, "tx2", 500L);
+
+        assertTrue(SheetReconciler.plan(rows, ledger).isEmpty());
+    }
+
+    @Test
+    public void duplicatesLastRowFirst() {
+        List<List<Object>> rows = sheet(
+                row("tx1", "1"),
+                row("tx2", "2"),
+                row("tx1", "1"),
+                row("tx3", "3"),
+                row("tx2", "2"));
+        Map<String, Long> ledger = ledger("tx1", 100L, "tx2", 200L, "tx3", 300L);
+
+        SheetReconciler plan = SheetReconciler.plan(rows, ledger);
+        assertEquals(Arrays.asList(5, 3), plan.getDuplicateRows());
+        assertTrue(plan.getRemoved().isEmpty());
+        assertTrue(plan.getChanged().isEmpty());
+    }
+
+    @Test
+    public void removedRows() {
+        List<List<Object>> rows = sheet(row("tx2", "2"));
+        Map<String, Long> ledger = ledger("tx1", 100L, "tx2", 200L);
+
+        SheetReconciler plan = SheetReconciler.plan(rows, ledger);
+        assertEquals(Collections.singletonList("tx1"), plan.getRemoved());
+
+        // an empty sheet removes everything
+        plan = SheetReconciler.plan(sheet(), ledger);
+        assertEquals(2, plan.getRemoved().size());
+    }
+
+    @Test
+    public void removingMostIsRefused() {
+        Map<String, Long> ledger = new HashMap<>();
+        List<List<Object>> most = sheet();
+        List<List<Object>> some = sheet();
+        for (int i = 0; i < 100; i++) {
+            ledger.put("tx" + i, 100L);
+            if (i >= 60) most.add(row("tx" + i, "1"));
+            if (i >= 40) some.add(row("tx" + i, "1"));
+        }
+        assertTrue(SheetReconciler.plan(most, ledger).removesMost(ledger.size()));
+        assertFalse(SheetReconciler.plan(some, ledger).removesMost(ledger.size()));
+
+        // a few removals are fine even if they are most of the ledger
+        SheetReconciler plan = SheetReconciler.plan(sheet(), ledger("tx1", 1L, "tx2", 2L));
+        assertEquals(2, plan.getRemoved().size());
+        assertFalse(plan.removesMost(2));
+    }
+
+    @Test
+    public void changedAmounts() {
+        List<List<Object>> rows = sheet(
+                row("tx1", "12.35"),
+                row("tx2", 12.345),
+                row("tx3", "-1"),
+                row("tx4", "  7.1 "));
+        Map<String, Long> ledger = ledger("tx1", 1234L, "tx2", 1234L, "tx3", 100L, "tx4", 710L);
+
+        SheetReconciler plan = SheetReconciler.plan(rows, ledger);
+        assertEquals(3, plan.getChanged().size());
+        assertEquals(1235L, (long) plan.getChanged().get("tx1"));
+        assertEquals(1235L, (long) plan.getChanged().get("tx2"));
+        assertEquals(-100L, (long) plan.getChanged().get("tx3"));
+    }
+
+    @Test
+    public void ignoredRows() {
+        List<List<Object>> rows = sheet(
+                row("", "12"),
+                row("foreign", "12"),
+                row("tx1", "twelve"),
+                row("tx2"),
+                row("tx3", ""));
+        Map<String, Long> ledger = ledger("tx1", 1200L, "tx2", 1200L, "tx3", 1200L);
+
+        assertTrue(SheetReconciler.plan(rows, ledger).isEmpty());
+    }
+
+    @Test
+    public void hash() {
+        List<List<Object>> rows = sheet(row("tx1", "1"), row("tx2", "2"));
+
+        assertEquals(SheetReconciler.hash(rows),
+                SheetReconciler.hash(sheet(row("tx1", "1"), row("tx2", "2"))));
+        assertNotEquals(SheetReconciler.hash(rows),
+                SheetReconciler.hash(sheet(row("tx2", "2"), row("tx1", "1"))));
+        assertNotEquals(SheetReconciler.hash(sheet(row("ab", "c"))),
+                SheetReconciler.hash(sheet(row("a", "bc"))));
+        assertNotEquals(SheetReconciler.hash(sheet(row("a", "b"))),
+                SheetReconciler.hash(sheet(row("a"), row("b"))));
+    }
+
+    /**
+     * A spreadsheet with the header row and the given rows
+     */
+    @SafeVarargs
+    static List<List<Object>> sheet(List<Object>... rows) {
+        List<List<Object>> sheet = new ArrayList<>();
+        sheet.add(row("TX ID", "Amount"));
+        sheet.addAll(Arrays.asList(rows));
+        return sheet;
+    }
+
+    static List<Object> row(Object... cells) {
+        return new ArrayList<>(Arrays.asList(cells));
+    }
+
+    /**
+     * A ledger from alternating TX IDs and amounts
+     */
+    private static Map<String, Long> ledger(Object... entries) {
+        Map<String, Long> ledger = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            ledger.put((String) entries[i], (Long) entries[i + 1]);
+        }
+        return ledger;
+    }
+}
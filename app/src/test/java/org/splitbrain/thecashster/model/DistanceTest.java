@@ -0,0 +1,73 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Accuracy of the distance calculations
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class DistanceTest {
+
+    private static final double EARTH_RADIUS = 6371000.0;
+
+    /**
+     * Points at a known distance in all directions must be found at that distance, on both
+     * sides of the switch to the haversine formula and up to high latitudes
+     */
+    @Test
+    public void noDrift() {
+        for (int lat = -80; lat <= 80; lat += 10) {
+            for (int bearing = 0; bearing < 360; bearing += 15) {
+                for (int distance = 100; distance <= 8000; distance += 100) {
+                    double[] point = destination(lat, 10, bearing, distance);
+                    String msg = lat + "° " + bearing + "° " + distance + "m";
+                    // the result is rounded to full meters
+                    assertEquals(msg, distance,
+                            Distance.between(lat, 10, point[0], point[1]), 0.5001);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void computeMatchesBetween() {
+        double[] lats = new double[50];
+        double[] lons = new double[50];
+        int[] out = new int[50];
+        for (int i = 0; i < lats.length; i++) {
+            double[] point = destination(52.5, 13.4, i * 7, i * 230);
+            lats[i] = point[0];
+            lons[i] = point[1];
+        }
+
+        Distance.compute(52.5, 13.4, lats, lons, out, lats.length);
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(Distance.between(52.5, 13.4, lats[i], lons[i]), out[i]);
+        }
+    }
+
+    @Test
+    public void samePoint() {
+        assertEquals(0, Distance.between(52.5, 13.4, 52.5, 13.4));
+    }
+
+    /**
+     * The point at the given distance and bearing on a sphere
+     *
+     * @return latitude and longitude in degrees
+     */
+    private static double[] destination(double lat, double lon, double bearing, double meters) {
+        double lat0 = Math.toRadians(lat);
+        double brng = Math.toRadians(bearing);
+        double dr = meters / EARTH_RADIUS;
+
+        double lat1 = Math.asin(Math.sin(lat0) * Math.cos(dr)
+                + Math.cos(lat0) * Math.sin(dr) * Math.cos(brng));
+        double dLon = Math.atan2(Math.sin(brng) * Math.sin(dr) * Math.cos(lat0),
+                Math.cos(dr) - Math.sin(lat0) * Math.sin(lat1));
+        return new double[]{Math.toDegrees(lat1), lon + Math.toDegrees(dLon)};
+    }
+}
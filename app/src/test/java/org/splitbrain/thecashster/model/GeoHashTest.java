@@ -0,0 +1,127 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encoding locations and covering bounding boxes with cells
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class GeoHashTest {
+
+    @Test
+    public void encode() {
+        // the example from Wikipedia
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("u4pruy", GeoHash.encode(57.64911, 10.40744));
+        assertEquals("s00000", GeoHash.encode(0, 0));
+        assertEquals("000000", GeoHash.encode(-90, -180));
+        assertEquals("zzzzzz", GeoHash.encode(90, 180));
+    }
+
+    @Test
+    public void coverSinglePoint() {
+        String[] cells = GeoHash.cover(52.52, 13.405, 52.52, 13.405);
+        assertNotNull(cells);
+        assertEquals(1, cells.length);
+        assertEquals(GeoHash.encode(52.52, 13.405), cells[0]);
+    }
+
+    @Test
+    public void coverAcrossCellBoundaries() {
+        // the prime meridian and the equator are cell boundaries at any precision
+        String[] cells = GeoHash.cover(-0.001, -0.001, 0.001, 0.001);
+        assertNotNull(cells);
+        assertEquals(4, cells.length);
+        assertCovered(cells, -0.001, -0.001, 0.001, 0.001);
+    }
+
+    @Test
+    public void coverPoles() {
+        String[] cells = GeoHash.cover(89.99, 10.0, 90.0, 10.02);
+        assertNotNull(cells);
+        assertCovered(cells, 89.99, 10.0, 90.0, 10.02);
+
+        cells = GeoHash.cover(-90.0, -10.02, -89.99, -10.0);
+        assertNotNull(cells);
+        assertCovered(cells, -90.0, -10.02, -89.99, -10.0);
+    }
+
+    @Test
+    public void coverAntimeridian() {
+        // boxes crossing the date line have west > east and are not covered
+        assertNull(GeoHash.cover(0.0, 179.99, 0.01, -179.99));
+
+        // boxes touching it from either side are fine
+        String[] cells = GeoHash.cover(0.0, 179.98, 0.01, 180.0);
+        assertNotNull(cells);
+        assertCovered(cells, 0.0, 179.98, 0.01, 180.0);
+        cells = GeoHash.cover(0.0, -180.0, 0.01, -179.98);
+        assertNotNull(cells);
+        assertCovered(cells, 0.0, -180.0, 0.01, -179.98);
+    }
+
+    @Test
+    public void tooManyCells() {
+        assertNull(GeoHash.cover(50.0, 10.0, 51.0, 11.0));
+        assertNull(GeoHash.cover(1.0, 0.0, 0.0, 1.0));
+
+        // a box of 8x8 cells is still fine, one cell larger is not
+        double width = 360.0 / (1 << 15);
+        double height = 180.0 / (1 << 15);
+        String[] cells = GeoHash.cover(height / 2, width / 2, height * 7.5, width * 7.5);
+        assertNotNull(cells);
+        assertEquals(64, cells.length);
+        assertNull(GeoHash.cover(height / 2, width / 2, height * 8.5, width * 7.5));
+    }
+
+    /**
+     * Every point of random boxes lies in one of the cells returned for it
+     */
+    @Test
+    public void coverContainsAllPoints() {
+        Random random = new Random(23);
+        for (int i = 0; i < 1000; i++) {
+            double south = random.nextDouble() * 179.9 - 90.0;
+            double west = random.nextDouble() * 359.9 - 180.0;
+            double north = Math.min(south + random.nextDouble() * 0.04, 90.0);
+            double east = Math.min(west + random.nextDouble() * 0.08, 180.0);
+
+            String[] cells = GeoHash.cover(south, west, north, east);
+            if (cells == null) continue; // too large
+            assertTrue(cells.length <= 64);
+            assertCovered(cells, south, west, north, east);
+
+            for (int j = 0; j < 100; j++) {
+                double lat = south + random.nextDouble() * (north - south);
+                double lon = west + random.nextDouble() * (east - west);
+                assertTrue(lat + "," + lon,
+                        Arrays.asList(cells).contains(GeoHash.encode(lat, lon)));
+            }
+        }
+    }
+
+    /**
+     * Check the corners and edge midpoints of the box are in the given cells
+     */
+    private static void assertCovered(String[] cells, double south, double west,
+                                      double north, double east) {
+        List<String> list = Arrays.asList(cells);
+        double[] lats = {south, (south + north) / 2, north};
+        double[] lons = {west, (west + east) / 2, east};
+        for (double lat : lats) {
+            for (double lon : lons) {
+                assertTrue(lat + "," + lon, list.contains(GeoHash.encode(lat, lon)));
+            }
+        }
+    }
+}
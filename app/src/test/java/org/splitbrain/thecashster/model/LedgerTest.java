@@ -0,0 +1,246 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The keys transactions are rolled up under
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class LedgerTest {
+
+    private TimeZone mDefaultZone;
+
+    @Before
+    public void setUp() {
+        mDefaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultZone);
+    }
+
+    @Test
+    public void weekKeysAtYearBoundaries() {
+        // 2015 has 53 weeks, the first days of 2016 still belong to it
+        assertEquals("w:2015-W53", Ledger.weekKey(date(2015, 12, 31)));
+        assertEquals("w:2015-W53", Ledger.weekKey(date(2016, 1, 1)));
+        assertEquals("w:2015-W53", Ledger.weekKey(date(2016, 1, 3)));
+        assertEquals("w:2016-W01", Ledger.weekKey(date(2016, 1, 4)));
+
+        // the last days of 2018 and 2019 belong to the first week of the next year
+        assertEquals("w:2018-W52", Ledger.weekKey(date(2018, 12, 30)));
+        assertEquals("w:2019-W01", Ledger.weekKey(date(2018, 12, 31)));
+        assertEquals("w:2020-W01", Ledger.weekKey(date(2019, 12, 30)));
+
+        // a year starting on Thursday starts with week 1
+        assertEquals("w:2015-W01", Ledger.weekKey(date(2015, 1, 1)));
+        assertEquals("w:2014-W52", Ledger.weekKey(date(2014, 12, 28)));
+
+        // 2020 has 53 weeks, too
+        assertEquals("w:2020-W53", Ledger.weekKey(date(2021, 1, 3)));
+        assertEquals("w:2021-W01", Ledger.weekKey(date(2021, 1, 4)));
+    }
+
+    @Test
+    public void dayAndMonthKeys() {
+        Date dt = date(2017, 1, 5);
+        assertEquals("d:2017-01-05", Ledger.dayKey(dt));
+        assertEquals("m:2017-01", Ledger.monthKey(dt));
+        assertEquals("p:abc", Ledger.placeKey("abc"));
+    }
+
+    @Test
+    public void keysUseLocalTime() {
+        assertArrayEquals(new String[]{"d:2017-12-31", "w:2017-W52", "m:2017-12", "p:x"},
+                Ledger.getKeys(date(2017, 12, 31, 23, 30), "x"));
+        // half past midnight in Berlin is still the previous year in UTC
+        assertArrayEquals(new String[]{"d:2018-01-01", "w:2018-W01", "m:2018-01"},
+                Ledger.getKeys(date(2018, 1, 1, 0, 30), null));
+    }
+
+    /**
+     * Rolling up by key gives the same totals as summing up all matching transactions
+     */
+    @Test
+    public void rollupsMatchBruteForceSums() {
+        Random random = new Random(4711);
+        int count = 2000;
+        Date[] dates = new Date[count];
+        String[] places = new String[count];
+        long[] cents = new long[count];
+
+        Map<String, Long> rollups = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        long start = date(2015, 11, 1).getTime();
+        for (int i = 0; i < count; i++) {
+            // spread over about three years to cross several year boundaries
+            dates[i] = new Date(start + (long) (random.nextDouble() * 1100L * 24 * 3600 * 1000));
+            places[i] = random.nextInt(10) == 0 ? null : "place" + random.nextInt(20);
+            cents[i] = random.nextInt(20000) - 1000;
+
+            for (String key : Ledger.getKeys(dates[i], places[i])) {
+                Long sum = rollups.get(key);
+                rollups.put(key, (sum == null ? 0 : sum) + cents[i]);
+                Integer num = counts.get(key);
+                counts.put(key, (num == null ? 0 : num) + 1);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : rollups.entrySet()) {
+            String key = entry.getKey();
+            long sum = 0;
+            int num = 0;
+            for (int i = 0; i < count; i++) {
+                if (matches(key, dates[i], places[i])) {
+                    sum += cents[i];
+                    num++;
+                }
+            }
+            assertEquals(key, sum, (long) entry.getValue());
+            assertEquals(key, num, (int) counts.get(key));
+        }
+    }
+
+    /**
+     * Keeping totals through random bookings, removals and changes gives the same result as
+     * adding up the remaining transactions from scratch
+     */
+    @Test
+    public void deltasMatchRecomputation() {
+        Random random = new Random(815);
+        final Map<String, long[]> totals = new HashMap<>();
+        Ledger.Totals ledger = new Ledger.Totals() {
+            @Override
+            public void add(String key, long cents, int count) {
+                long[] total = totals.get(key);
+                if (total == null) {
+                    total = new long[2];
+                    totals.put(key, total);
+                }
+                total[0] += cents;
+                total[1] += count;
+            }
+        };
+
+        List<Date> dates = new ArrayList<>();
+        List<String> places = new ArrayList<>();
+        List<Long> cents = new ArrayList<>();
+        long start = date(2015, 11, 1).getTime();
+        for (int i = 0; i < 100000; i++) {
+            int op = dates.isEmpty() ? 0 : random.nextInt(4);
+            if (op < 2) {
+                Date dt = new Date(start + (long) (random.nextDouble() * 1100L * 24 * 3600 * 1000));
+                String place = random.nextInt(10) == 0 ? null : "place" + random.nextInt(50);
+                long amount = random.nextInt(20000) - 1000;
+                Ledger.record(ledger, dt, place, amount);
+                dates.add(dt);
+                places.add(place);
+                cents.add(amount);
+            } else {
+                int tx = random.nextInt(dates.size());
+                if (op == 2) {
+                    Ledger.remove(ledger, dates.get(tx), places.get(tx), cents.get(tx));
+                    // swap with the last one to remove in constant time
+                    int last = dates.size() - 1;
+                    dates.set(tx, dates.get(last));
+                    places.set(tx, places.get(last));
+                    cents.set(tx, cents.get(last));
+                    dates.remove(last);
+                    places.remove(last);
+                    cents.remove(last);
+                } else {
+                    long amount = random.nextInt(20000) - 1000;
+                    Ledger.change(ledger, dates.get(tx), places.get(tx), cents.get(tx), amount);
+                    cents.set(tx, amount);
+                }
+            }
+        }
+
+        Map<String, long[]> expected = new HashMap<>();
+        for (int i = 0; i < dates.size(); i++) {
+            for (String key : Ledger.getKeys(dates.get(i), places.get(i))) {
+                long[] total = expected.get(key);
+                if (total == null) {
+                    total = new long[2];
+                    expected.put(key, total);
+                }
+                total[0] += cents.get(i);
+                total[1]++;
+            }
+        }
+
+        Set<String> keys = new HashSet<>(totals.keySet());
+        keys.addAll(expected.keySet());
+        for (String key : keys) {
+            long[] want = expected.containsKey(key) ? expected.get(key) : new long[2];
+            long[] have = totals.containsKey(key) ? totals.get(key) : new long[2];
+            assertArrayEquals(key, want, have);
+        }
+    }
+
+    /**
+     * Check if the given transaction belongs to the key without using Ledger's key generation
+     */
+    private static boolean matches(String key, Date dt, String place) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(dt);
+        String[] parts = key.substring(2).split("-W?");
+        switch (key.charAt(0)) {
+            case 'd':
+                return cal.get(Calendar.YEAR) == Integer.parseInt(parts[0])
+                        && cal.get(Calendar.MONTH) + 1 == Integer.parseInt(parts[1])
+                        && cal.get(Calendar.DAY_OF_MONTH) == Integer.parseInt(parts[2]);
+            case 'm':
+                return cal.get(Calendar.YEAR) == Integer.parseInt(parts[0])
+                        && cal.get(Calendar.MONTH) + 1 == Integer.parseInt(parts[1]);
+            case 'w':
+                return isoWeek(cal) == Integer.parseInt(parts[0]) * 100
+                        + Integer.parseInt(parts[1]);
+            case 'p':
+                return key.substring(2).equals(place);
+        }
+        throw new IllegalArgumentException(key);
+    }
+
+    /**
+     * ISO week as year * 100 + week, found by its Thursday which always lies in the week's year
+     */
+    private static int isoWeek(Calendar cal) {
+        Calendar thursday = (Calendar) cal.clone();
+        int weekday = (cal.get(Calendar.DAY_OF_WEEK) + 5) % 7; // Monday = 0
+        thursday.add(Calendar.DAY_OF_MONTH, 3 - weekday);
+        int year = thursday.get(Calendar.YEAR);
+        int week = (thursday.get(Calendar.DAY_OF_YEAR) - 1) / 7 + 1;
+        return year * 100 + week;
+    }
+
+    private static Date date(int year, int month, int day) {
+        return date(year, month, day, 12, 0);
+    }
+
+    private static Date date(int year, int month, int day, int hour, int minute) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute);
+        return cal.getTime();
+    }
+}
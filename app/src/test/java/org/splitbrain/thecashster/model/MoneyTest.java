@@ -0,0 +1,89 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Formatting of amounts, including the extremes a long can hold
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class MoneyTest {
+
+    @Test
+    public void formatSmallAmounts() {
+        assertEquals("0.00", Money.format(0));
+        assertEquals("0.01", Money.format(1));
+        assertEquals("0.10", Money.format(10));
+        assertEquals("1.00", Money.format(100));
+        assertEquals("123.45", Money.format(12345));
+    }
+
+    @Test
+    public void formatNegativeAmounts() {
+        assertEquals("-0.01", Money.format(-1));
+        assertEquals("-0.99", Money.format(-99));
+        assertEquals("-1.00", Money.format(-100));
+        assertEquals("-123.45", Money.format(-12345));
+    }
+
+    @Test
+    public void formatExtremes() {
+        assertEquals("92233720368547758.07", Money.format(Long.MAX_VALUE));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+        assertEquals(Money.MAX_LENGTH, Money.format(Long.MIN_VALUE).length());
+    }
+
+    @Test
+    public void formatIntoBuffer() {
+        char[] buf = new char[Money.MAX_LENGTH + 3];
+        buf[0] = 'x';
+        buf[1] = 'y';
+
+        int len = Money.format(-505, buf, 2);
+        assertEquals(5, len);
+        assertEquals("xy-5.05", new String(buf, 0, 2 + len));
+
+        len = Money.format(Long.MIN_VALUE, buf, 2);
+        assertEquals("-92233720368547758.08", new String(buf, 2, len));
+    }
+
+    /**
+     * Formatting into the same buffer over and over does not create any objects
+     * <p>
+     * Measured with the allocation counter of the JVM running the tests, skipped where that
+     * is not available
+     */
+    @Test
+    public void formatIntoBufferAllocatesNothing() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(counter.isThreadAllocatedMemorySupported()
+                && counter.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        char[] buf = new char[Money.MAX_LENGTH];
+        int len = 0;
+        for (int i = 0; i < 10000; i++) {
+            len += Money.format(i * 37L, buf, 0);
+        }
+
+        long before = counter.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++) {
+            len += Money.format(i * 37L - 50000, buf, 0);
+        }
+        long allocated = counter.getThreadAllocatedBytes(thread) - before;
+
+        // a String per call would add up to several megabytes
+        assertTrue(allocated + " bytes allocated", allocated < 16 * 1024);
+        assertTrue(len > 0);
+        assertEquals("123.45", new String(buf, 0, Money.format(12345, buf, 0)));
+    }
+}
@@ -0,0 +1,67 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Place IDs have to stay the same as before, they are the primary keys of stored places
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceIdTest {
+
+    @Test
+    public void knownIds() {
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", PlaceId.create(""));
+        // the hash starts with a zero byte half, it has to be padded
+        assertEquals("0cc175b9c0f1b6a831c399e269772661", PlaceId.create("a"));
+        assertEquals("e486aeca0b12918313aba2cc445c5cb4", PlaceId.create("Starbucks"));
+        assertEquals("42302fe782f652488361b8c24a2338cc", PlaceId.create("Café Müller"));
+        // foursquare IDs are used instead of the name when available
+        assertEquals("0a39c06f09473e070f86bbe71867578c",
+                PlaceId.create("4b0588f1f964a5203b6d22e3"));
+    }
+
+    @Test
+    public void matchesOldImplementation() throws NoSuchAlgorithmException {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                // mostly ASCII with some umlauts, accents and symbols
+                sb.append(random.nextInt(4) == 0
+                        ? (char) (0xA0 + random.nextInt(0x300))
+                        : (char) (0x20 + random.nextInt(0x5F)));
+            }
+            String input = sb.toString();
+            assertEquals(input, oldId(input), PlaceId.create(input));
+        }
+    }
+
+    /**
+     * How Place.updateId() created the IDs before
+     * <p>
+     * It used getBytes() with the platform charset, which is always UTF-8 on Android
+     */
+    private static String oldId(String s) throws NoSuchAlgorithmException {
+        MessageDigest digest = java.security.MessageDigest.getInstance("MD5");
+        digest.update(s.getBytes(Charset.forName("UTF-8")));
+        byte messageDigest[] = digest.digest();
+
+        StringBuilder hexString = new StringBuilder();
+        for (byte aMessageDigest : messageDigest) {
+            StringBuilder h = new StringBuilder(Integer.toHexString(0xFF & aMessageDigest));
+            while (h.length() < 2)
+                h.insert(0, "0");
+            hexString.append(h);
+        }
+        return hexString.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package org.splitbrain.thecashster.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tokenizing and searching places, using an in-memory index instead of Realm
+ *
+ * @author Andreas Gohr andi@splitbrain.org
+ */
+public class PlaceIndexTest {
+
+    @Test
+    public void words() {
+        assertEquals(Arrays.asList("cafe", "muller", "hauptstr", "12"),
+                PlaceIndex.getWords("Café Müller, Hauptstr. 12"));
+        assertTrue(PlaceIndex.getWords(" - ").isEmpty());
+    }
+
+    @Test
+    public void tokens() {
+        Map<String, Integer> tokens = PlaceIndex.getTokens("Star Bar");
+        assertEquals(PlaceIndex.WEIGHT_WORD, (int) tokens.get("star"));
+        assertEquals(PlaceIndex.WEIGHT_WORD, (int) tokens.get("bar"));
+        assertEquals(PlaceIndex.WEIGHT_PREFIX, (int) tokens.get("st"));
+        assertEquals(PlaceIndex.WEIGHT_PREFIX, (int) tokens.get("sta"));
+        // single letters are too short to be indexed
+        assertNull(tokens.get("s"));
+        // typo variants only for longer words
+        assertEquals(PlaceIndex.WEIGHT_TYPO, (int) tokens.get("sar"));
+        assertNull(tokens.get("br"));
+
+        // a prefix of one word that is another word keeps the higher weight
+        tokens = PlaceIndex.getTokens("Star Starbucks");
+        assertEquals(PlaceIndex.WEIGHT_WORD, (int) tokens.get("star"));
+    }
+
+    @Test
+    public void prefixMatches() {
+        Map<String, Float> result = PlaceIndex.search(index(), "starb");
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey("starbucks"));
+
+        // an exact word ranks before a prefix
+        result = PlaceIndex.search(index(), "star");
+        assertEquals(1.0f, result.get("starbar"), 0.001f);
+        assertTrue(result.get("starbar") > result.get("starbucks"));
+        assertFalse(result.containsKey("bakery"));
+
+        // all words have to match
+        result = PlaceIndex.search(index(), "star cof");
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey("starbucks"));
+    }
+
+    @Test
+    public void typoMatches() {
+        // one letter missing, added or replaced
+        assertTrue(PlaceIndex.search(index(), "starbuks").containsKey("starbucks"));
+        assertTrue(PlaceIndex.search(index(), "starrbucks").containsKey("starbucks"));
+        assertTrue(PlaceIndex.search(index(), "stxrbucks").containsKey("starbucks"));
+        // two typos are too much
+        assertTrue(PlaceIndex.search(index(), "stxrbuks").isEmpty());
+        // short words are not typo matched
+        assertTrue(PlaceIndex.search(index(), "bxr").isEmpty());
+    }
+
+    @Test
+    public void typosRankBelowPrefixes() {
+        Map<String, Float> typo = PlaceIndex.search(index(), "bakrey");
+        Map<String, Float> prefix = PlaceIndex.search(index(), "bake");
+        assertTrue(typo.get("bakery") > 0);
+        assertTrue(prefix.get("bakery") > typo.get("bakery"));
+
+        // a typo is only tried when nothing matches exactly
+        Map<String, Float> result = PlaceIndex.search(index(), "coffee");
+        assertEquals(1, result.size());
+        assertEquals(1.0f, result.get("starbucks"), 0.001f);
+    }
+
+    /**
+     * An index over a few places, looked up like the Realm query does
+     */
+    private static PlaceIndex.TokenLookup index() {
+        final Map<String, Map<String, Integer>> places = new HashMap<>();
+        places.put("starbucks", PlaceIndex.getTokens("Starbucks Coffee"));
+        places.put("starbar", PlaceIndex.getTokens("Star Bar"));
+        places.put("bakery", PlaceIndex.getTokens("Bakery Coffe"));
+
+        return new PlaceIndex.TokenLookup() {
+            @Override
+            public Map<String, Integer> find(String[] tokens, int minWeight) {
+                Map<String, Integer> matches = new HashMap<>();
+                for (Map.Entry<String, Map<String, Integer>> place : places.entrySet()) {
+                    for (String token : tokens) {
+                        Integer weight = place.getValue().get(token);
+                        if (weight == null || weight < minWeight) continue;
+                        Integer best = matches.get(place.getKey());
+                        if (best == null || best < weight) matches.put(place.getKey(), weight);
+                    }
+                }
+                return matches;
+            }
+        };
+    }
+}